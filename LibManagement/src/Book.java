@@ -1,6 +1,9 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
 /*
 * Represents a book in the library
 * Stores book details and manages the available and total copies of the book
+* Copy accounting is lock-free (compare-and-set), so many threads can borrow/return the same book at once
 * implements Searchable to allow keyword-based searching
  */
 
@@ -13,13 +16,26 @@ public class Book implements Searchable {
     private String category;
 
     private int totalCopies;
-    private int availableCopies;
+    private final AtomicInteger availableCopies;
+
+    //title/author/category folded once for searching (see SearchQuery.fold)
+    private String searchTitle;
+    private String searchAuthor;
+    private String searchCategory;
 
-    //Constructor for book data and copy counts
+    //Constructor for book data and copy counts, all copies start out available
     public Book(int id, String title, String author, int year, String category, int totalCopies){
+        this(id, title, author, year, category, totalCopies, totalCopies);
+    }
+
+    //Constructor that also sets the available copies directly, used when loading saved data
+    public Book(int id, String title, String author, int year, String category, int totalCopies, int availableCopies){
         if(totalCopies <= 0 ){
             throw new IllegalArgumentException("Total copies must be greater than 0");
         }
+        if(availableCopies < 0 || availableCopies > totalCopies){
+            throw new IllegalArgumentException("Available copies must be between 0 and total copies");
+        }
 
         this.id = id;
         this.title = title;
@@ -27,39 +43,61 @@ public class Book implements Searchable {
         this.year = year;
         this.category = category;
         this.totalCopies = totalCopies;
-        this.availableCopies = totalCopies;
+        this.availableCopies = new AtomicInteger(availableCopies);
+        this.searchTitle = SearchQuery.fold(title);
+        this.searchAuthor = SearchQuery.fold(author);
+        this.searchCategory = SearchQuery.fold(category);
     }
 
     //methods
 
     //for borrowing books, works if there are available copies
+    //retries the compare-and-set if another thread changed the count in between, never goes below 0
     public boolean borrowCopy(){
-        if(availableCopies > 0 ){
-            --availableCopies;
-            return true;
+        while (true) {
+            int current = availableCopies.get();
+            if(current <= 0){
+                return false;
+            }
+            if(availableCopies.compareAndSet(current, current - 1)){
+                return true;
+            }
         }
-        return false;
     }
 
     //returns the borrowed copies and adds them to available copies while making sure only the owned/total copies are returned
     public void returnCopy(){
-        if(totalCopies > availableCopies){
-            availableCopies++;
+        while (true) {
+            int current = availableCopies.get();
+            if(current >= totalCopies){
+                return;
+            }
+            if(availableCopies.compareAndSet(current, current + 1)){
+                return;
+            }
         }
     }
 
-    //Checks if the book matches a search keyword
+    //Checks if the book matches a search keyword, ignoring case and accents
     @Override
     public boolean matches(String keyword) {
-        if (keyword == null) {
-            return false;
-        }
+        return matches(SearchQuery.compile(keyword));
+    }
 
-        String search = keyword.toLowerCase();
+    //Checks a compiled keyword against the cached folded fields without allocating
+    @Override
+    public boolean matches(SearchQuery query) {
+        return query.matchesFolded(searchTitle)
+                || query.matchesFolded(searchAuthor)
+                || query.matchesFolded(searchCategory);
+    }
 
-        return (title != null && title.toLowerCase().contains(search))
-                || (author != null && author.toLowerCase().contains(search))
-                || (category != null && category.toLowerCase().contains(search));
+    //Swaps the repeating fields (author, category and their folded forms) for the dictionary's shared instances
+    void internStrings(StringDictionary dictionary){
+        this.author = dictionary.intern(author);
+        this.category = dictionary.intern(category);
+        this.searchAuthor = dictionary.intern(searchAuthor);
+        this.searchCategory = dictionary.intern(searchCategory);
     }
 
     //getters
@@ -84,11 +122,24 @@ public class Book implements Searchable {
     }
 
     public int getAvailableCopies() {
-        return availableCopies;
+        return availableCopies.get();
     }
 
     public int getTotalCopies() {
         return totalCopies;
     }
+
+    //Folded fields used by the search indexes
+    public String getSearchTitle() {
+        return searchTitle;
+    }
+
+    public String getSearchAuthor() {
+        return searchAuthor;
+    }
+
+    public String getSearchCategory() {
+        return searchCategory;
+    }
 }
 
@@ -0,0 +1,129 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/*
+* Keeps the books in every BookSort order at all times, so browsing iterates a ready-made order instead of sorting
+* Each order is a skip list keyed on a precomputed sort key plus the book's ordinal, adding a book or changing
+* its availability is O(log n) per order
+* The text orders compare like compareToIgnoreCase and equal keys keep the order the books were added in,
+* so the result is the same as a stable sort of the books list with the old comparators
+ */
+
+public class BookOrderIndex {
+
+    //Sort key: text (text orders) or number (numeric orders), then ordinal so no two books are ever equal
+    //Also the cursor of keyset paging, a page continues right after (or before) the key it was given
+    public record Key(String text, long number, int ordinal) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other){
+            if (text != null){
+                int c = text.compareTo(other.text);
+                if (c != 0) return c;
+            }
+            int c = Long.compare(number, other.number);
+            return c != 0 ? c : Integer.compare(ordinal, other.ordinal);
+        }
+    }
+
+    private final Map<BookSort, ConcurrentSkipListMap<Key, Book>> orders = new EnumMap<>(BookSort.class);
+    //the availability key each book is currently filed under, needed to remove it when the count changes
+    private final Map<Book, Key> availabilityKeys = new ConcurrentHashMap<>();
+
+    public BookOrderIndex(){
+        for (BookSort sort : BookSort.values()){
+            orders.put(sort, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    //Files a new book in every order
+    public void add(Book book, int ordinal){
+        orders.get(BookSort.TITLE).put(new Key(collationKey(book.getTitle()), 0, ordinal), book);
+        orders.get(BookSort.AUTHOR).put(new Key(collationKey(book.getAuthor()), 0, ordinal), book);
+        orders.get(BookSort.CATEGORY).put(new Key(collationKey(book.getCategory()), 0, ordinal), book);
+        orders.get(BookSort.ID).put(new Key(null, book.getId(), ordinal), book);
+
+        Key availability = availabilityKey(book, ordinal);
+        availabilityKeys.put(book, availability);
+        orders.get(BookSort.AVAILABILITY).put(availability, book);
+    }
+
+    //Moves a book to its new place in the availability order, the caller serializes calls for the same book
+    //The new entry goes in before the old one comes out, so a concurrent browse may briefly see the book twice but never misses it
+    public void availabilityChanged(Book book){
+        Key old = availabilityKeys.get(book);
+        if (old == null) return;
+        Key updated = availabilityKey(book, old.ordinal());
+        if (updated.equals(old)) return;
+
+        ConcurrentSkipListMap<Key, Book> order = orders.get(BookSort.AVAILABILITY);
+        order.put(updated, book);
+        availabilityKeys.put(book, updated);
+        order.remove(old);
+    }
+
+    //Books in the given order, a live view that follows later changes
+    public Iterator<Book> iterator(BookSort sort){
+        return orders.get(sort).values().iterator();
+    }
+
+    //Up to count books in the given order, skipping the first from
+    public List<Book> range(BookSort sort, int from, int count){
+        List<Book> result = new ArrayList<>(Math.max(0, Math.min(count, 1024)));
+        Iterator<Book> it = iterator(sort);
+        for (int i = 0; i < from && it.hasNext(); i++) it.next();
+        while (result.size() < count && it.hasNext()) result.add(it.next());
+        return result;
+    }
+
+    //A page of books and the keys of its first and last row (both null for an empty page)
+    public record Page(List<Book> books, Key first, Key last) {}
+
+    //Up to limit books that come after the given key (from the start when it is null)
+    //O(log n) to find the position plus the page itself, nothing before the key is walked
+    public Page pageAfter(BookSort sort, Key after, int limit){
+        ConcurrentSkipListMap<Key, Book> order = orders.get(sort);
+        return page(after == null ? order : order.tailMap(after, false), limit, false);
+    }
+
+    //Up to limit books that come right before the given key, in order (the last page when it is null)
+    public Page pageBefore(BookSort sort, Key before, int limit){
+        ConcurrentSkipListMap<Key, Book> order = orders.get(sort);
+        return page((before == null ? order : order.headMap(before, false)).descendingMap(), limit, true);
+    }
+
+    //Takes the first limit entries, skipping a book seen twice while its availability entry is being moved
+    private static Page page(NavigableMap<Key, Book> entries, int limit, boolean reversed){
+        List<Book> books = new ArrayList<>();
+        List<Key> keys = new ArrayList<>();
+        Set<Book> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Map.Entry<Key, Book> entry : entries.entrySet()){
+            if (books.size() >= limit) break;
+            if (seen.add(entry.getValue())){
+                books.add(entry.getValue());
+                keys.add(entry.getKey());
+            }
+        }
+        if (reversed){
+            Collections.reverse(books);
+            Collections.reverse(keys);
+        }
+        if (books.isEmpty()) return new Page(books, null, null);
+        return new Page(books, keys.get(0), keys.get(keys.size() - 1));
+    }
+
+    //Most available copies first
+    private static Key availabilityKey(Book book, int ordinal){
+        return new Key(null, -(long) book.getAvailableCopies(), ordinal);
+    }
+
+    //Maps every char the way compareToIgnoreCase compares it, so String.compareTo on keys gives the same order
+    static String collationKey(String text){
+        if (text == null) return "";
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++){
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,12 @@
+/*
+* Orders the catalog can be browsed in, each one is kept ready by a BookOrderIndex
+ */
+
+public enum BookSort {
+    TITLE,
+    AUTHOR,
+    CATEGORY,
+    //most available copies first
+    AVAILABILITY,
+    ID
+}
@@ -1,4 +1,6 @@
 import org.junit.jupiter.api.Test;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class BookTest {
@@ -47,5 +49,61 @@ public class BookTest {
         assertEquals(1, book.getAvailableCopies());
     }
 
+    //Testing that matching ignores case and accents on both the keyword and the book fields
+    @Test
+    void matches_ignoresCaseAndDiacritics() {
+        Book book = new Book(1, "Die Blümchen", "Renée Straße", 2023, "Fantasy", 1);
+
+        assertTrue(book.matches("BLUMCHEN"));
+        assertTrue(book.matches("renee"));
+        assertTrue(book.matches("strasse"));
+        assertTrue(book.matches("fantasy"));
+        assertFalse(book.matches("storm"));
+        assertFalse(book.matches((String) null));
+    }
+
+    //Testing that a compiled query gives the same answer as the plain keyword
+    @Test
+    void matches_compiledQuery_agreesWithKeyword() {
+        Book book = new Book(2, "Tintenblut", "Cornelia Funke", 2005, "Fantasy", 1);
+
+        for (String keyword : new String[]{"tinten", "FUNKE", "asy", "blut funke", ""}) {
+            assertEquals(book.matches(keyword), book.matches(SearchQuery.compile(keyword)));
+        }
+    }
+
+    //Testing the loading constructor that sets the available copies directly
+    @Test
+    void constructor_setsAvailableCopies_andRejectsOutOfRange() {
+        Book book = new Book(1, "Test", "Author", 2023, "Cat", 5, 2);
+        assertEquals(2, book.getAvailableCopies());
+        assertEquals(5, book.getTotalCopies());
+
+        assertThrows(IllegalArgumentException.class, () ->
+                new Book(1, "Test", "Author", 2023, "Cat", 5, 6)
+        );
+        assertThrows(IllegalArgumentException.class, () ->
+                new Book(1, "Test", "Author", 2023, "Cat", 5, -1)
+        );
+    }
 
+    //Testing that threads racing for the same book can only take as many copies as there are
+    @Test
+    void borrowCopy_neverOversells_underContention() throws Exception {
+        Book book = new Book(1, "Popular", "Author", 2023, "Cat", 100);
+        AtomicInteger borrowed = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    if (book.borrowCopy()) borrowed.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+
+        assertEquals(100, borrowed.get());
+        assertEquals(0, book.getAvailableCopies());
+    }
 }
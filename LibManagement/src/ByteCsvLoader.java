@@ -0,0 +1,519 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/*
+* Fast CSV loader that reads the files into a direct buffer and tokenizes the raw bytes
+* Numbers, dates and booleans are parsed straight from the buffer, Strings are only created for text fields,
+* and no per-line String/StringBuilder/array is allocated
+* Produces the same rows as CsvLoader: both build their objects with CsvFields and share its delta code
+*
+* The files are read with plain FileChannel.read into one reused buffer per file, not mapped, so nothing keeps a
+* file open once its load returns (a mapping would until it is garbage collected, and Windows refuses to replace or
+* delete a mapped file, which the delta merge does)
+* Each buffer is cut into newline-aligned chunks that are parsed in parallel on a fork-join pool and concatenated in file order,
+* books and members load at the same time and loans are resolved once both are done
+* A bad row fails the load with "<file> line N: ...", N is the 1-based line in the file (header = line 1)
+* and when several rows are bad it is always the first one in the file
+ */
+
+public class ByteCsvLoader {
+
+    //Largest read buffer, files bigger than this are read in pieces that end on a line boundary
+    private static final int BUFFER_BYTES = 16 << 20;
+    //Smallest chunk worth a task of its own, smaller files are parsed in one piece
+    private static final int MIN_CHUNK = 256 * 1024;
+
+    //Books, members and loans of a whole library, loans point at the book/member objects in the other two lists
+    public record Library(List<Book> books, List<Member> members, List<Loan> loans) {}
+
+    //Loads the three files on the common pool, see loadLibrary(String, String, String, ForkJoinPool)
+    public static Library loadLibrary(String booksPath, String membersPath, String loansPath) throws IOException {
+        return loadLibrary(booksPath, membersPath, loansPath, ForkJoinPool.commonPool());
+    }
+
+    //Loads the base files plus only the delta segments up to upToSeq, on the common pool
+    public static Library loadLibrary(String booksPath, String membersPath, String loansPath, int upToSeq) throws IOException {
+        return loadLibrary(booksPath, membersPath, loansPath, upToSeq, new StringDictionary());
+    }
+
+    //Same, interning the repeated strings with the caller's dictionary (the one of the LibManager the rows go into)
+    public static Library loadLibrary(String booksPath, String membersPath, String loansPath, int upToSeq, StringDictionary dictionary) throws IOException {
+        return loadLibrary(booksPath, membersPath, loansPath, ForkJoinPool.commonPool(), upToSeq, dictionary, null);
+    }
+
+    //Same, handing the base file's returned loans to returnedSink in file order instead of putting them in the result
+    //(they are final, no delta segment changes a returned loan), so a large history is never held as one list
+    //Returned loans from delta segments still come back in the result, a segment row may close an open base loan
+    public static Library loadLibrary(String booksPath, String membersPath, String loansPath, int upToSeq, StringDictionary dictionary,
+                                      Consumer<Loan> returnedSink) throws IOException {
+        return loadLibrary(booksPath, membersPath, loansPath, ForkJoinPool.commonPool(), upToSeq, dictionary, returnedSink);
+    }
+
+    //Loads books and members concurrently, then the loans against them
+    public static Library loadLibrary(String booksPath, String membersPath, String loansPath, ForkJoinPool pool) throws IOException {
+        return loadLibrary(booksPath, membersPath, loansPath, pool, Integer.MAX_VALUE, new StringDictionary(), null);
+    }
+
+    private static Library loadLibrary(String booksPath, String membersPath, String loansPath, ForkJoinPool pool, int upToSeq,
+                                       StringDictionary dictionary, Consumer<Loan> returnedSink) throws IOException {
+        CompletableFuture<List<Book>> books = CompletableFuture.supplyAsync(() -> {
+            try {
+                return loadBooks(booksPath, pool, upToSeq, dictionary);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, pool);
+        CompletableFuture<List<Member>> members = CompletableFuture.supplyAsync(() -> {
+            try {
+                return loadMembers(membersPath, pool, dictionary);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, pool);
+        List<Book> loadedBooks = await(books);
+        List<Member> loadedMembers = await(members);
+        return new Library(loadedBooks, loadedMembers, loadLoans(loansPath, loadedBooks, loadedMembers, pool, upToSeq, returnedSink));
+    }
+
+    //Applies the delta segments after afterSeq to rows loaded from elsewhere (a snapshot of the earlier segments)
+    //Base loans of a book that a segment replaced are moved over to the new Book object
+    public static Library applyDeltas(Library base, String booksPath, String loansPath, int afterSeq, StringDictionary dictionary) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        List<List<Book>> bookDeltas = new ArrayList<>();
+        for (int seq : CsvLoader.deltaSeqsBetween(booksPath, afterSeq, Integer.MAX_VALUE)) {
+            bookDeltas.add(parse(CsvSaver.deltaPath(booksPath, seq), row -> CsvFields.toBook(row, dictionary), pool, 0));
+        }
+        List<Integer> loanSeqs = CsvLoader.deltaSeqsBetween(loansPath, afterSeq, Integer.MAX_VALUE);
+        if (bookDeltas.isEmpty() && loanSeqs.isEmpty()) return base;
+
+        List<Book> books = CsvLoader.applyBookDeltas(base.books(), bookDeltas);
+        Map<Integer, Book> booksById = CsvLoader.booksById(books);
+        Map<String, Member> membersById = CsvLoader.membersById(base.members());
+
+        List<Loan> loans = new ArrayList<>(base.loans().size());
+        for (Loan loan : base.loans()) {
+            Book book = booksById.get(loan.getBook().getId());
+            if (book == loan.getBook()) {
+                loans.add(loan);
+            } else {
+                Loan moved = new Loan(book, loan.getMember(), loan.getLoanDate());
+                if (loan.isReturned()) moved.loadAsReturned(loan.getReturnDate());
+                loans.add(moved);
+            }
+        }
+
+        Function<CsvFields, Loan> parser = row -> CsvFields.toLoan(row, booksById, membersById);
+        List<List<Loan>> loanDeltas = new ArrayList<>();
+        for (int seq : loanSeqs) {
+            loanDeltas.add(parse(CsvSaver.deltaPath(loansPath, seq), parser, pool, 0));
+        }
+        return new Library(books, base.members(), CsvLoader.applyLoanDeltas(loans, loanDeltas));
+    }
+
+    //Loads all books from books.csv with its delta segments applied
+    public static List<Book> loadBooks(String filePath) throws IOException {
+        return loadBooks(filePath, ForkJoinPool.commonPool());
+    }
+
+    public static List<Book> loadBooks(String filePath, ForkJoinPool pool) throws IOException {
+        return loadBooks(filePath, pool, Integer.MAX_VALUE, new StringDictionary());
+    }
+
+    private static List<Book> loadBooks(String filePath, ForkJoinPool pool, int upToSeq, StringDictionary dictionary) throws IOException {
+        Function<CsvFields, Book> parser = row -> CsvFields.toBook(row, dictionary);
+        List<List<Book>> deltas = new ArrayList<>();
+        for (int seq : CsvLoader.deltaSeqsBetween(filePath, Integer.MIN_VALUE, upToSeq)) {
+            deltas.add(parse(CsvSaver.deltaPath(filePath, seq), parser, pool, 0));
+        }
+        return CsvLoader.applyBookDeltas(parse(filePath, parser, pool, 0), deltas);
+    }
+
+    //Loads members from members.csv and creates member or studentmember objects
+    public static List<Member> loadMembers(String filePath) throws IOException {
+        return loadMembers(filePath, ForkJoinPool.commonPool());
+    }
+
+    public static List<Member> loadMembers(String filePath, ForkJoinPool pool) throws IOException {
+        return loadMembers(filePath, pool, new StringDictionary());
+    }
+
+    private static List<Member> loadMembers(String filePath, ForkJoinPool pool, StringDictionary dictionary) throws IOException {
+        return parse(filePath, row -> CsvFields.toMember(row, dictionary), pool, 0);
+    }
+
+    //Loads loans from loans.csv with its delta segments applied, resolving book/member IDs against the given lists
+    public static List<Loan> loadLoans(String filePath, List<Book> books, List<Member> members) throws IOException {
+        return loadLoans(filePath, books, members, ForkJoinPool.commonPool());
+    }
+
+    public static List<Loan> loadLoans(String filePath, List<Book> books, List<Member> members, ForkJoinPool pool) throws IOException {
+        return loadLoans(filePath, books, members, pool, Integer.MAX_VALUE, null);
+    }
+
+    private static List<Loan> loadLoans(String filePath, List<Book> books, List<Member> members, ForkJoinPool pool, int upToSeq,
+                                        Consumer<Loan> returnedSink) throws IOException {
+        //built once and only read afterwards, so every chunk can share them
+        Map<Integer, Book> booksById = CsvLoader.booksById(books);
+        Map<String, Member> membersById = CsvLoader.membersById(members);
+        Function<CsvFields, Loan> parser = row -> CsvFields.toLoan(row, booksById, membersById);
+
+        List<List<Loan>> deltas = new ArrayList<>();
+        for (int seq : CsvLoader.deltaSeqsBetween(filePath, Integer.MIN_VALUE, upToSeq)) {
+            deltas.add(parse(CsvSaver.deltaPath(filePath, seq), parser, pool, 0));
+        }
+        List<Loan> base = new ArrayList<>();
+        parse(filePath, parser, pool, 0, BUFFER_BYTES, loan -> {
+            if (returnedSink != null && loan.isReturned()) returnedSink.accept(loan);
+            else base.add(loan);
+        });
+        return CsvLoader.applyLoanDeltas(base, deltas);
+    }
+
+    //A newline-aligned byte range [from, to) of the read buffer, the first chunk of a file starts with the header
+    private record Chunk(ByteBuffer buffer, int from, int to, boolean header) {}
+
+    //What one chunk produced: its rows, how many lines it spans, and its first bad row if any
+    private record ChunkResult<T>(List<T> rows, int lines, int errorLine, RuntimeException error) {}
+
+    //Parses every non-blank row after the header, parser is called concurrently for different chunks
+    //Chunks run as separate tasks and are joined back in file order
+    //chunkBytes 0 picks a size from the file size and the pool's parallelism
+    static <T> List<T> parse(String filePath, Function<CsvFields, T> parser, ForkJoinPool pool, int chunkBytes) throws IOException {
+        return parse(filePath, parser, pool, chunkBytes, BUFFER_BYTES);
+    }
+
+    //Same, reading the file through a buffer of at most bufferBytes (grown only for a line longer than that)
+    //Each buffer's worth of whole lines is parsed before the next read reuses the buffer, the partial line at its end
+    //is carried over to the front
+    static <T> List<T> parse(String filePath, Function<CsvFields, T> parser, ForkJoinPool pool, int chunkBytes, int bufferBytes) throws IOException {
+        List<T> rows = new ArrayList<>();
+        parse(filePath, parser, pool, chunkBytes, bufferBytes, rows::add);
+        return rows;
+    }
+
+    //Same, handing each row to sink on the calling thread in file order, one buffer's worth at a time
+    private static <T> void parse(String filePath, Function<CsvFields, T> parser, ForkJoinPool pool, int chunkBytes, int bufferBytes,
+                                  Consumer<T> sink) throws IOException {
+        //prefix sum of the chunks' line counts gives each chunk's first line number
+        int linesBefore = 0;
+        try (FileChannel ch = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (chunkBytes <= 0) {
+                //a few chunks per worker so a slow chunk does not leave the others idle
+                chunkBytes = (int) Math.min(bufferBytes, Math.max(MIN_CHUNK, size / (pool.getParallelism() * 4L) + 1));
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.max(1, Math.min(bufferBytes, size)));
+            boolean header = true;
+            boolean eof = false;
+
+            while (!eof) {
+                while (buffer.hasRemaining()) {
+                    if (ch.read(buffer) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                buffer.flip();
+
+                //only whole lines are handled, the rest is read again as the start of the next buffer
+                int end = buffer.limit();
+                if (!eof) {
+                    end = lastNewline(buffer, end) + 1;
+                    if (end == 0) {
+                        //one line fills the whole buffer
+                        ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                        bigger.put(buffer);
+                        buffer = bigger;
+                        continue;
+                    }
+                }
+
+                List<ForkJoinTask<ChunkResult<T>>> tasks = new ArrayList<>();
+                for (int from = 0; from < end; ) {
+                    int to = chunkBytes >= end - from ? end : nextNewline(buffer, from + chunkBytes - 1, end) + 1;
+                    Chunk chunk = new Chunk(buffer, from, Math.min(to, end), header);
+                    tasks.add(pool.submit(() -> parseChunk(chunk, parser)));
+                    header = false;
+                    from = to;
+                }
+
+                for (ForkJoinTask<ChunkResult<T>> task : tasks) {
+                    //chunk tasks report bad rows as a result instead of throwing, join() only has to help run them
+                    ChunkResult<T> result = task.join();
+                    if (result.error() != null) {
+                        //earlier chunks had no bad row, so this is the first one in the file
+                        for (ForkJoinTask<ChunkResult<T>> other : tasks) other.cancel(false);
+                        throw new IllegalStateException(Path.of(filePath).getFileName() + " line " + (linesBefore + result.errorLine())
+                                + ": " + result.error().getMessage(), result.error());
+                    }
+                    result.rows().forEach(sink);
+                    linesBefore += result.lines();
+                }
+
+                //every task of this buffer is joined, so it can be refilled
+                buffer.position(end);
+                buffer.compact();
+            }
+        }
+    }
+
+    //Parses one chunk with its own row object, stopping at the first bad row
+    private static <T> ChunkResult<T> parseChunk(Chunk chunk, Function<CsvFields, T> parser) {
+        ByteBuffer buffer = chunk.buffer();
+        CsvRow row = new CsvRow(buffer);
+        List<T> rows = new ArrayList<>();
+        int lines = 0;
+        int lineStart = chunk.from();
+
+        while (lineStart < chunk.to()) {
+            int lineEnd = nextNewline(buffer, lineStart, chunk.to());
+            lines++;
+            if (!(chunk.header() && lines == 1)) {
+                row.parse(lineStart, lineEnd);
+                if (!row.isBlank()) {
+                    try {
+                        rows.add(parser.apply(row));
+                    } catch (RuntimeException e) {
+                        return new ChunkResult<>(rows, lines, lines, e);
+                    }
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return new ChunkResult<>(rows, lines, 0, null);
+    }
+
+    //Waits for one of the concurrent file loads, rethrowing what it threw
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException io) throw io.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    //Index of the next '\n' at or after from, or end when the last line has no newline
+    static int nextNewline(ByteBuffer buffer, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (buffer.get(i) == '\n') return i;
+        }
+        return end;
+    }
+
+    private static int lastNewline(ByteBuffer buffer, int end) {
+        for (int i = end - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') return i;
+        }
+        return -1;
+    }
+
+    /*
+    * One CSV line inside a byte buffer, split into field offsets without copying
+    * Quotes toggle "inside a field" and are dropped (a doubled one inside quotes is kept once), fields are trimmed like String.trim(),
+    * same rules as CsvLoader.splitCsvLine
+     */
+    static final class CsvRow implements CsvFields {
+        private final ByteBuffer buffer;
+        private int[] starts = new int[8];
+        private int[] ends = new int[8];
+        private boolean[] quoted = new boolean[8];
+        private int count;
+        private int lineStart;
+        private int lineEnd;
+        private byte[] scratch = new byte[256];
+
+        CsvRow(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        //Splits the bytes [from, to) into fields
+        void parse(int from, int to) {
+            lineStart = from;
+            lineEnd = to;
+            count = 0;
+
+            int fieldStart = from;
+            boolean inQuotes = false;
+            boolean hasQuote = false;
+            for (int i = from; i < to; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                    hasQuote = true;
+                } else if (b == ',' && !inQuotes) {
+                    addField(fieldStart, i, hasQuote);
+                    fieldStart = i + 1;
+                    hasQuote = false;
+                }
+            }
+            addField(fieldStart, to, hasQuote);
+        }
+
+        private void addField(int start, int end, boolean hasQuote) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                quoted = Arrays.copyOf(quoted, count * 2);
+            }
+            //quoted fields are trimmed after their quotes are removed, in stringField
+            if (!hasQuote) {
+                while (start < end && isTrimmed(buffer.get(start))) start++;
+                while (end > start && isTrimmed(buffer.get(end - 1))) end--;
+            }
+            starts[count] = start;
+            ends[count] = end;
+            quoted[count] = hasQuote;
+            count++;
+        }
+
+        //String.trim() removes every char up to and including ' ', in UTF-8 those are single bytes
+        private static boolean isTrimmed(byte b) {
+            return (b & 0xFF) <= ' ';
+        }
+
+        //Same ASCII whitespace as String.isBlank()
+        boolean isBlank() {
+            for (int i = lineStart; i < lineEnd; i++) {
+                byte b = buffer.get(i);
+                if (b != ' ' && !(b >= '\t' && b <= '\r') && !(b >= 0x1C && b <= 0x1F)) return false;
+            }
+            return true;
+        }
+
+        private void check(int field) {
+            if (field >= count) {
+                throw new ArrayIndexOutOfBoundsException("Index " + field + " out of bounds for length " + count);
+            }
+        }
+
+        //Decodes a text field, the only place a String is created
+        @Override
+        public String stringField(int field) {
+            check(field);
+            int start = starts[field];
+            int end = ends[field];
+
+            int length = 0;
+            ensureScratch(end - start);
+            boolean inQuotes = false;
+            for (int i = start; i < end; i++) {
+                byte b = buffer.get(i);
+                if (!quoted[field] || b != '"') {
+                    scratch[length++] = b;
+                } else if (inQuotes && i + 1 < end && buffer.get(i + 1) == '"') {
+                    //a doubled quote inside quotes is one literal quote, as in CsvLoader.splitCsvLine
+                    scratch[length++] = b;
+                    i++;
+                } else {
+                    inQuotes = !inQuotes;
+                }
+            }
+
+            int from = 0;
+            if (quoted[field]) {
+                while (from < length && isTrimmed(scratch[from])) from++;
+                while (length > from && isTrimmed(scratch[length - 1])) length--;
+            }
+            return new String(scratch, from, length - from, StandardCharsets.UTF_8);
+        }
+
+        private void ensureScratch(int size) {
+            if (scratch.length < size) scratch = new byte[Math.max(size, scratch.length * 2)];
+        }
+
+        //Parses an int straight from the bytes, with the same overflow and error behaviour as Integer.parseInt
+        @Override
+        public int intField(int field) {
+            check(field);
+            int start = starts[field];
+            int end = ends[field];
+            if (quoted[field] || start == end) return Integer.parseInt(stringField(field));
+
+            boolean negative = false;
+            int i = start;
+            byte first = buffer.get(i);
+            if (first == '-' || first == '+') {
+                negative = first == '-';
+                i++;
+                if (i == end) return Integer.parseInt(stringField(field));
+            }
+
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) return Integer.parseInt(stringField(field));
+                value = value * 10 + digit;
+                if (value > (long) Integer.MAX_VALUE + 1) return Integer.parseInt(stringField(field));
+            }
+            value = negative ? -value : value;
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) return Integer.parseInt(stringField(field));
+            return (int) value;
+        }
+
+        //Parses an ISO yyyy-MM-dd date straight from the bytes, other forms go through LocalDate.parse
+        @Override
+        public LocalDate dateField(int field) {
+            check(field);
+            int start = starts[field];
+            if (!quoted[field] && ends[field] - start == 10
+                    && buffer.get(start + 4) == '-' && buffer.get(start + 7) == '-') {
+                int year = digits(start, 4);
+                int month = digits(start + 5, 2);
+                int day = digits(start + 8, 2);
+                if (year >= 0 && month >= 0 && day >= 0) {
+                    return LocalDate.of(year, month, day);
+                }
+            }
+            return LocalDate.parse(stringField(field));
+        }
+
+        //Reads a fixed number of digits, -1 if any byte is not a digit
+        private int digits(int from, int length) {
+            int value = 0;
+            for (int i = from; i < from + length; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) return -1;
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        //Compares a field to an ASCII word ignoring case, without creating a String
+        @Override
+        public boolean fieldEqualsIgnoreCase(int field, String ascii) {
+            check(field);
+            if (quoted[field]) return stringField(field).equalsIgnoreCase(ascii);
+
+            int start = starts[field];
+            if (ends[field] - start != ascii.length()) return false;
+            for (int i = 0; i < ascii.length(); i++) {
+                if (Character.toLowerCase((char) buffer.get(start + i)) != Character.toLowerCase(ascii.charAt(i))) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isFieldEmpty(int field) {
+            check(field);
+            if (quoted[field]) return stringField(field).isEmpty();
+            return starts[field] == ends[field];
+        }
+    }
+}
@@ -0,0 +1,206 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteCsvLoaderTest {
+
+    //Quoted commas, padding, CRLF endings, blank lines and non-ASCII text, everything the line-based loader copes with
+    @TempDir
+    Path tempDir;
+
+    private final StringDictionary dictionary = new StringDictionary();
+
+    //Book row parser for the parse() calls
+    private Book toBook(CsvFields row) {
+        return CsvFields.toBook(row, dictionary);
+    }
+
+    private Path writeLibrary() throws Exception {
+        Path dir = TestLibraryFiles.write(tempDir,
+                "1,\"Storm, Rising\",Erin Hunter,2004,Fantasy,2,2\r\n" +
+                "\r\n" +
+                "  2 , Tintenblut ,\" Cornelia Funke \", 2005 ,Fantasy,1,0\n" +
+                "3,Çalıkuşu,Reşat Nuri Güntekin,1922,Roman,3,3",
+                "reg,M1,Charlie D,m1@test.com,117806,2,,\n" +
+                "   \n" +
+                "STU,M2,\"C, Nisa\",m2@test.com,124031,4,S9510,BIO\n",
+                "2,M1,2025-01-01,2025-01-15,,false\n" +
+                "1,M2,2025-02-01,2025-02-15,2025-02-10,TRUE\n");
+        Files.writeString(dir.resolve("books.csv.delta.1"), TestLibraryFiles.BOOKS_HEADER +
+                "1,\"Storm, Rising\",Erin Hunter,2004,Fantasy,2,1\n");
+        Files.writeString(dir.resolve("loans.csv.delta.1"), TestLibraryFiles.LOANS_HEADER +
+                "1,M1,2025-03-01,2025-03-15,,false\n");
+        return dir;
+    }
+
+    private List<String> bookRows(List<Book> books) {
+        List<String> rows = new ArrayList<>();
+        for (Book b : books) {
+            rows.add(b.getId() + "|" + b.getTitle() + "|" + b.getAuthor() + "|" + b.getYear() + "|" + b.getCategory()
+                    + "|" + b.getTotalCopies() + "|" + b.getAvailableCopies());
+        }
+        return rows;
+    }
+
+    private List<String> memberRows(List<Member> members) {
+        List<String> rows = new ArrayList<>();
+        for (Member m : members) {
+            String row = m.getClass().getSimpleName() + "|" + m.getMemID() + "|" + m.getName() + "|" + m.getEmail()
+                    + "|" + m.getNumber() + "|" + m.getMaxBooksAllowed();
+            if (m instanceof StudentMember s) row += "|" + s.getStuID() + "|" + s.getDepartment();
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private List<String> loanRows(List<Loan> loans) {
+        List<String> rows = new ArrayList<>();
+        for (Loan l : loans) {
+            rows.add(l.getBook().getId() + "|" + l.getMember().getMemID() + "|" + l.getLoanDate() + "|" + l.getDueDate()
+                    + "|" + l.getReturnDate() + "|" + l.isReturned());
+        }
+        return rows;
+    }
+
+    //Testing that the byte loader produces exactly the rows CsvLoader does
+    @Test
+    void byteLoader_matchesCsvLoader() throws Exception {
+        Path dir = writeLibrary();
+        String booksPath = dir.resolve("books.csv").toString();
+        String membersPath = dir.resolve("members.csv").toString();
+        String loansPath = dir.resolve("loans.csv").toString();
+
+        List<Book> books = CsvLoader.loadBooks(booksPath);
+        List<Member> members = CsvLoader.loadMembers(membersPath);
+        List<Book> byteBooks = ByteCsvLoader.loadBooks(booksPath);
+        List<Member> byteMembers = ByteCsvLoader.loadMembers(membersPath);
+
+        assertEquals(bookRows(books), bookRows(byteBooks));
+        assertEquals(memberRows(members), memberRows(byteMembers));
+        assertEquals(loanRows(CsvLoader.loadLoans(loansPath, books, members)),
+                loanRows(ByteCsvLoader.loadLoans(loansPath, byteBooks, byteMembers)));
+
+        assertEquals("Storm, Rising", byteBooks.get(0).getTitle());
+        assertEquals("Çalıkuşu", byteBooks.get(2).getTitle());
+        assertEquals(3, ByteCsvLoader.loadLoans(loansPath, byteBooks, byteMembers).size());
+    }
+
+    //Testing that bad rows are reported with their file and line
+    @Test
+    void byteLoader_rejectsBadRows() throws Exception {
+        Path dir = writeLibrary();
+        String booksPath = dir.resolve("books.csv").toString();
+        String membersPath = dir.resolve("members.csv").toString();
+        List<Book> books = ByteCsvLoader.loadBooks(booksPath);
+        List<Member> members = ByteCsvLoader.loadMembers(membersPath);
+
+        Path missing = dir.resolve("missing.csv");
+        Files.writeString(missing, TestLibraryFiles.LOANS_HEADER + "9,M1,2025-01-01,2025-01-15,,false\n");
+        Exception e = assertThrows(IllegalStateException.class,
+                () -> ByteCsvLoader.loadLoans(missing.toString(), books, members));
+        assertEquals("missing.csv line 2: Loan refers to missing bookId: 9", e.getMessage());
+
+        Path wrongDue = dir.resolve("wrongdue.csv");
+        Files.writeString(wrongDue, TestLibraryFiles.LOANS_HEADER + "2,M1,2025-01-01,2025-01-20,,false\n");
+        assertThrows(IllegalStateException.class, () -> ByteCsvLoader.loadLoans(wrongDue.toString(), books, members));
+
+        Path badNumber = dir.resolve("badnumber.csv");
+        Files.writeString(badNumber, TestLibraryFiles.BOOKS_HEADER + "1,A,B,20x4,C,1,1\n");
+        e = assertThrows(IllegalStateException.class, () -> ByteCsvLoader.loadBooks(badNumber.toString()));
+        assertTrue(e.getCause() instanceof NumberFormatException);
+
+        Path badType = dir.resolve("badtype.csv");
+        Files.writeString(badType, TestLibraryFiles.MEMBERS_HEADER + "XYZ,M9,A,a@b.c,1,2,,\n");
+        e = assertThrows(IllegalStateException.class, () -> ByteCsvLoader.loadMembers(badType.toString()));
+        assertEquals("badtype.csv line 2: Unknown member type: XYZ", e.getMessage());
+    }
+
+    //Writes a books file with the given number of rows into a folder of the temp folder, bad rows get a non-numeric year
+    private Path writeBooks(String folder, int count, Set<Integer> badRows) throws Exception {
+        StringBuilder sb = new StringBuilder(TestLibraryFiles.BOOKS_HEADER);
+        for (int i = 1; i <= count; i++) {
+            sb.append(i).append(",\"Title, ").append(i).append("\",Author ").append(i % 37).append(',')
+                    .append(badRows.contains(i) ? "x" : String.valueOf(1900 + i % 120)).append(",Cat,3,2\n");
+            if (i % 50 == 0) sb.append('\n');
+        }
+        Path file = Files.createDirectory(tempDir.resolve(folder)).resolve("books.csv");
+        Files.writeString(file, sb.toString());
+        return file;
+    }
+
+    //Testing that many small chunks on several threads give the rows in file order
+    @Test
+    void chunkedParse_keepsFileOrder() throws Exception {
+        Path file = writeBooks("good", 5000, Set.of());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Book> whole = ByteCsvLoader.parse(file.toString(), this::toBook, pool, Integer.MAX_VALUE);
+            List<Book> chunked = ByteCsvLoader.parse(file.toString(), this::toBook, pool, 997);
+            assertEquals(5000, chunked.size());
+            assertEquals(bookRows(whole), bookRows(chunked));
+            assertEquals(bookRows(CsvLoader.loadBooks(file.toString())), bookRows(chunked));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    //Testing that the reported line is the first bad row in the file, whichever chunk finishes first
+    @Test
+    void chunkedParse_reportsFirstBadLine() throws Exception {
+        //row i is on line i + 1 plus one blank line per 50 rows before it
+        Path file = writeBooks("bad", 5000, Set.of(4321, 777, 4999));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunkBytes : new int[]{509, 4096, Integer.MAX_VALUE}) {
+                Exception e = assertThrows(IllegalStateException.class,
+                        () -> ByteCsvLoader.parse(file.toString(), this::toBook, pool, chunkBytes));
+                assertTrue(e.getMessage().startsWith("books.csv line " + (777 + 1 + 776 / 50) + ": "), e.getMessage());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    //Testing that a file read through a buffer much smaller than itself (and than some lines) gives the same rows and line numbers
+    @Test
+    void bufferedParse_carriesLinesAcrossReads() throws Exception {
+        Path file = writeBooks("good", 5000, Set.of());
+        Path bad = writeBooks("bad", 5000, Set.of(4321, 777));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Book> whole = ByteCsvLoader.parse(file.toString(), this::toBook, pool, Integer.MAX_VALUE);
+            for (int bufferBytes : new int[]{16, 100, 4096}) {
+                List<Book> buffered = ByteCsvLoader.parse(file.toString(), this::toBook, pool, 0, bufferBytes);
+                assertEquals(bookRows(whole), bookRows(buffered));
+
+                Exception e = assertThrows(IllegalStateException.class,
+                        () -> ByteCsvLoader.parse(bad.toString(), this::toBook, pool, 0, bufferBytes));
+                assertTrue(e.getMessage().startsWith("books.csv line " + (777 + 1 + 776 / 50) + ": "), e.getMessage());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    //Testing that loadLibrary resolves loans against the books and members it loaded
+    @Test
+    void loadLibrary_matchesSeparateLoads() throws Exception {
+        Path dir = writeLibrary();
+        ByteCsvLoader.Library library = ByteCsvLoader.loadLibrary(dir.resolve("books.csv").toString(),
+                dir.resolve("members.csv").toString(), dir.resolve("loans.csv").toString());
+
+        assertEquals(bookRows(CsvLoader.loadBooks(dir.resolve("books.csv").toString())), bookRows(library.books()));
+        assertEquals(3, library.loans().size());
+        for (Loan loan : library.loans()) {
+            assertTrue(library.books().contains(loan.getBook()));
+            assertTrue(library.members().contains(loan.getMember()));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.util.Arrays;
+
+/*
+* Column store of the numeric and coded fields of the books, kept next to the Book objects
+* Each column is a primitive array indexed by the book's ordinal (its position in the books list),
+* category and author are stored as their StringDictionary codes, so comparing them is an int comparison
+* Filters and numeric sorts loop over these arrays instead of following a pointer to every Book
+ */
+
+public class ColumnarCatalog {
+
+    //Numeric columns a catalog can be sorted by
+    public enum Column { ID, YEAR, TOTAL_COPIES, AVAILABLE_COPIES }
+
+    private int size;
+    private int[] ids = new int[16];
+    private int[] years = new int[16];
+    private int[] totalCopies = new int[16];
+    private int[] availableCopies = new int[16];
+    private int[] categoryCodes = new int[16];
+    private int[] authorCodes = new int[16];
+
+    //gives out the category and author codes
+    private final StringDictionary dictionary;
+
+    //Catalog with a dictionary of its own
+    public ColumnarCatalog(){
+        this(new StringDictionary());
+    }
+
+    public ColumnarCatalog(StringDictionary dictionary){
+        this.dictionary = dictionary;
+    }
+
+    //Appends a book's row, its ordinal is the number of rows before it
+    public int add(Book book){
+        if (size == ids.length){
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            years = Arrays.copyOf(years, capacity);
+            totalCopies = Arrays.copyOf(totalCopies, capacity);
+            availableCopies = Arrays.copyOf(availableCopies, capacity);
+            categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+            authorCodes = Arrays.copyOf(authorCodes, capacity);
+        }
+        int ordinal = size++;
+        ids[ordinal] = book.getId();
+        years[ordinal] = book.getYear();
+        totalCopies[ordinal] = book.getTotalCopies();
+        availableCopies[ordinal] = book.getAvailableCopies();
+        categoryCodes[ordinal] = dictionary.encode(book.getCategory());
+        authorCodes[ordinal] = dictionary.encode(book.getAuthor());
+        return ordinal;
+    }
+
+    //Copies a book's current availability into its row
+    public void setAvailableCopies(int ordinal, int available){
+        checkOrdinal(ordinal);
+        availableCopies[ordinal] = available;
+    }
+
+    //Ordinals of the books in a category that have at least one copy available, in ordinal order
+    public int[] availableInCategory(String category){
+        int c = dictionary.lookup(category);
+        if (c < 0) return new int[0];
+
+        int[] result = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++){
+            if (categoryCodes[i] == c && availableCopies[i] > 0){
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    //Ordinals of the books by an author, in ordinal order
+    public int[] byAuthor(String author){
+        int c = dictionary.lookup(author);
+        if (c < 0) return new int[0];
+
+        int[] result = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++){
+            if (authorCodes[i] == c){
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    //All ordinals sorted by a numeric column, equal values keep ordinal order (same result as a stable sort of the books list)
+    //Each row becomes one long (value in the high half, ordinal in the low half) so the sort never touches a Book
+    public int[] sortedBy(Column column, boolean descending){
+        int[] values = column(column);
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++){
+            //~v reverses the order of ints without overflowing
+            int v = descending ? ~values[i] : values[i];
+            keys[i] = ((long) v << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int[] ordinals = new int[size];
+        for (int i = 0; i < size; i++){
+            ordinals[i] = (int) keys[i];
+        }
+        return ordinals;
+    }
+
+    //Number of rows
+    public int size(){
+        return size;
+    }
+
+    public int getId(int ordinal){
+        checkOrdinal(ordinal);
+        return ids[ordinal];
+    }
+
+    public int getYear(int ordinal){
+        checkOrdinal(ordinal);
+        return years[ordinal];
+    }
+
+    public int getTotalCopies(int ordinal){
+        checkOrdinal(ordinal);
+        return totalCopies[ordinal];
+    }
+
+    public int getAvailableCopies(int ordinal){
+        checkOrdinal(ordinal);
+        return availableCopies[ordinal];
+    }
+
+    public String getCategory(int ordinal){
+        checkOrdinal(ordinal);
+        return dictionary.decode(categoryCodes[ordinal]);
+    }
+
+    public String getAuthor(int ordinal){
+        checkOrdinal(ordinal);
+        return dictionary.decode(authorCodes[ordinal]);
+    }
+
+    private int[] column(Column column){
+        return switch (column){
+            case ID -> ids;
+            case YEAR -> years;
+            case TOTAL_COPIES -> totalCopies;
+            case AVAILABLE_COPIES -> availableCopies;
+        };
+    }
+
+    private void checkOrdinal(int ordinal){
+        if (ordinal < 0 || ordinal >= size){
+            throw new IndexOutOfBoundsException("Ordinal " + ordinal + " out of bounds for size " + size);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.time.LocalDate;
+import java.util.Map;
+
+/*
+* The fields of one CSV row, read by index
+* CsvLoader answers these from a split String line and ByteCsvLoader straight from its byte buffer,
+* the row-to-object code below is written once against this interface so both loaders build the same objects
+* Fields are trimmed like String.trim() and quotes are already removed
+ */
+
+interface CsvFields {
+
+    String stringField(int field);
+
+    int intField(int field);
+
+    LocalDate dateField(int field);
+
+    //Compares a field to an ASCII word ignoring case
+    boolean fieldEqualsIgnoreCase(int field, String ascii);
+
+    boolean isFieldEmpty(int field);
+
+    //Builds a book from a row: id,title,author,year,category,totalCopies,availableCopies
+    //Author and category repeat across rows, they are interned so the parsed copies can be dropped right away
+    static Book toBook(CsvFields row, StringDictionary dictionary) {
+        return new Book(row.intField(0), row.stringField(1), dictionary.intern(row.stringField(2)), row.intField(3),
+                dictionary.intern(row.stringField(4)), row.intField(5), row.intField(6));
+    }
+
+    //Builds a member from a row: type,memberId,name,email,number,maxBooksAllowed,studentId,department
+    static Member toMember(CsvFields row, StringDictionary dictionary) {
+        String memberId = row.stringField(1);
+        String name = row.stringField(2);
+        String email = row.stringField(3);
+        int number = row.intField(4);
+
+        //create correct member type based on CSV
+        if (row.fieldEqualsIgnoreCase(0, "REG")) {
+            return new Member(name, memberId, email, number, row.intField(5));
+        } else if (row.fieldEqualsIgnoreCase(0, "STU")) {
+            return new StudentMember(name, memberId, email, number, row.stringField(6),
+                    dictionary.intern(row.stringField(7)));
+        }
+        throw new IllegalArgumentException("Unknown member type: " + row.stringField(0));
+    }
+
+    //Builds a loan from a row: bookId,memberId,loanDate,dueDate,returnDate,returned
+    //and validates its references and dates
+    static Loan toLoan(CsvFields row, Map<Integer, Book> booksById, Map<String, Member> membersById) {
+        int bookId = row.intField(0);
+        String memberId = row.stringField(1);
+        LocalDate loanDate = row.dateField(2);
+        LocalDate dueDate = row.dateField(3);
+        boolean returned = row.fieldEqualsIgnoreCase(5, "true");
+
+        Book book = booksById.get(bookId);
+        Member member = membersById.get(memberId);
+
+        if (book == null) throw new IllegalStateException("Loan refers to missing bookId: " + bookId);
+        if (member == null) throw new IllegalStateException("Loan refers to missing memberId: " + memberId);
+
+        Loan loan = new Loan(book, member, loanDate);
+
+        // Optional strict check: CSV dueDate must match fixed 14-day rule
+        if (!loan.getDueDate().equals(dueDate)) {
+            throw new IllegalStateException("CSV dueDate does not match fixed rule for bookId=" + bookId);
+        }
+
+        if (returned) {
+            if (row.isFieldEmpty(4)) {
+                throw new IllegalStateException("returned=true but returnDate empty for bookId=" + bookId);
+            }
+            loan.loadAsReturned(row.dateField(4));
+        }
+        return loan;
+    }
+}
@@ -1,138 +1,182 @@
 import java.io.*;
 import java.util.*;
+import java.util.function.Function;
 import java.time.LocalDate;
 
 //Util class for loading lib data from CSV files
 public class CsvLoader {
 
-    //Loads all books from books.csv into a list of book objects
+    //Loads all books from books.csv into a list of book objects, with its delta segments applied
     public static List<Book> loadBooks(String filePath) throws IOException {
-        List<Book> books = new ArrayList<>();
-
-        //opens the csv file for reading
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line = br.readLine(); // header
-
-            //read each book row
-            while ((line = br.readLine()) != null) {
-                if (line.isBlank()) continue;
-
-                //splits the columns
-                String[] p = splitCsvLine(line);
-
-                //parse book fields
-                int id = Integer.parseInt(p[0].trim());
-                String title = p[1].trim();
-                String author = p[2].trim();
-                int year = Integer.parseInt(p[3].trim());
-                String category = p[4].trim();
-                int totalCopies = Integer.parseInt(p[5].trim());
-                int availableCopies = Integer.parseInt(p[6].trim());
-
-                //create book with total copies
-                Book book = new Book(id, title, author, year, category, totalCopies);
+        return loadBooks(filePath, Integer.MAX_VALUE);
+    }
 
-                // adjust availability down to match CSV
-                while (book.getAvailableCopies() > availableCopies) {
-                    book.borrowCopy();
-                }
+    //Loads books from the base file plus the delta segments up to upToSeq
+    public static List<Book> loadBooks(String filePath, int upToSeq) throws IOException {
+        //one dictionary per load, so the base file and its segments share their author/category instances
+        StringDictionary dictionary = new StringDictionary();
+        List<List<Book>> deltas = new ArrayList<>();
+        for (int seq : deltaSeqsBetween(filePath, Integer.MIN_VALUE, upToSeq)) {
+            deltas.add(readBooks(CsvSaver.deltaPath(filePath, seq), dictionary));
+        }
+        return applyBookDeltas(readBooks(filePath, dictionary), deltas);
+    }
 
-                books.add(book);
+    //Applies delta segments to base book rows, a delta row replaces the book with the same id, new ids are appended
+    public static List<Book> applyBookDeltas(List<Book> base, List<List<Book>> deltas) {
+        Map<Integer, Book> byId = new LinkedHashMap<>();
+        for (Book book : base) {
+            byId.put(book.getId(), book);
+        }
+        for (List<Book> delta : deltas) {
+            for (Book book : delta) {
+                byId.put(book.getId(), book);
             }
         }
+        return new ArrayList<>(byId.values());
+    }
 
-        return books;
+    //Reads the book rows of a single CSV file
+    private static List<Book> readBooks(String filePath, StringDictionary dictionary) throws IOException {
+        return readRows(filePath, row -> CsvFields.toBook(row, dictionary));
     }
 
     //Loads members from members.csv and creates member or studentmember objects
     public static List<Member> loadMembers(String filePath) throws IOException {
-        List<Member> members = new ArrayList<>();
+        StringDictionary dictionary = new StringDictionary();
+        return readRows(filePath, row -> CsvFields.toMember(row, dictionary));
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line = br.readLine(); // header
+    //Loads loans from csv and validates references and dates, with its delta segments applied
+    public static List<Loan> loadLoans(String filePath, List<Book> books, List<Member> members) throws IOException {
+        return loadLoans(filePath, books, members, Integer.MAX_VALUE);
+    }
 
-            while ((line = br.readLine()) != null) {
-                if (line.isBlank()) continue;
+    //Loads loans from the base file plus the delta segments up to upToSeq
+    public static List<Loan> loadLoans(String filePath, List<Book> books, List<Member> members, int upToSeq) throws IOException {
+        //hash join: the ID lookup tables are built once, each loan row then resolves in constant time
+        Map<Integer, Book> booksById = booksById(books);
+        Map<String, Member> membersById = membersById(members);
 
-                String[] p = splitCsvLine(line);
+        List<List<Loan>> deltas = new ArrayList<>();
+        for (int seq : deltaSeqsBetween(filePath, Integer.MIN_VALUE, upToSeq)) {
+            deltas.add(readLoans(CsvSaver.deltaPath(filePath, seq), booksById, membersById));
+        }
+        return applyLoanDeltas(readLoans(filePath, booksById, membersById), deltas);
+    }
+
+    //Delta segment numbers of a base file in (after, upTo], in the order they are applied
+    static List<Integer> deltaSeqsBetween(String basePath, int after, int upTo) throws IOException {
+        List<Integer> seqs = new ArrayList<>();
+        for (int seq : CsvSaver.deltaSeqs(basePath)) {
+            if (seq > after && seq <= upTo) seqs.add(seq);
+        }
+        return seqs;
+    }
 
-                //read common member fields
-                String type = p[0].trim();
-                String memberId = p[1].trim();
-                String name = p[2].trim();
-                String email = p[3].trim();
-                int number = Integer.parseInt(p[4].trim());
+    //Loan rows resolve their book against this, putIfAbsent keeps the first book with an ID like the old front-to-back scan did
+    static Map<Integer, Book> booksById(List<Book> books) {
+        Map<Integer, Book> byId = new HashMap<>();
+        for (Book b : books) byId.putIfAbsent(b.getId(), b);
+        return byId;
+    }
+
+    //Same for members
+    static Map<String, Member> membersById(List<Member> members) {
+        Map<String, Member> byId = new HashMap<>();
+        for (Member m : members) byId.putIfAbsent(m.getMemID(), m);
+        return byId;
+    }
 
+    //Applies delta segments to base loan rows
+    //A delta row for a loan that is still open (same book, member and loan date) updates it, any other row is a new loan
+    public static List<Loan> applyLoanDeltas(List<Loan> base, List<List<Loan>> deltas) {
+        List<Loan> loans = new ArrayList<>(base);
 
-                //create correct member type based on CSV
-                if (type.equalsIgnoreCase("REG")) {
-                    int maxBooksAllowed = Integer.parseInt(p[5].trim());
-                    members.add(
-                            new Member(name, memberId, email, number, maxBooksAllowed));
-                } else if (type.equalsIgnoreCase("STU")) {
-                    String studentId = p[6].trim();
-                    String department = p[7].trim();
+        //open loans by key -> their positions in the list
+        Map<String, Deque<Integer>> openByKey = new HashMap<>();
+        for (int i = 0; i < loans.size(); i++) {
+            if (!loans.get(i).isReturned()) {
+                openByKey.computeIfAbsent(loanKey(loans.get(i)), k -> new ArrayDeque<>()).add(i);
+            }
+        }
 
-                    members.add(
-                            new StudentMember(
-                                    name, memberId, email, number, studentId, department));
+        for (List<Loan> delta : deltas) {
+            for (Loan loan : delta) {
+                Deque<Integer> open = openByKey.get(loanKey(loan));
+                int index;
+                if (open != null && !open.isEmpty()) {
+                    index = open.poll();
+                    loans.set(index, loan);
                 } else {
-                    throw new IllegalArgumentException("Unknown member type: " + type);
+                    index = loans.size();
+                    loans.add(loan);
+                }
+                if (!loan.isReturned()) {
+                    openByKey.computeIfAbsent(loanKey(loan), k -> new ArrayDeque<>()).add(index);
                 }
             }
         }
+        return loans;
+    }
 
-        return members;
+    //Identifies a loan across checkpoints
+    private static String loanKey(Loan loan) {
+        return loan.getBook().getId() + "," + loan.getMember().getMemID() + "," + loan.getLoanDate();
     }
 
-    //Loads loans from csv and validates references and dates
-    public static List<Loan> loadLoans(String filePath, List<Book> books, List<Member> members) throws IOException {
-        List<Loan> loans = new ArrayList<>();
+    //Reads the loan rows of a single CSV file
+    private static List<Loan> readLoans(String filePath, Map<Integer, Book> booksById, Map<String, Member> membersById) throws IOException {
+        return readRows(filePath, row -> CsvFields.toLoan(row, booksById, membersById));
+    }
+
+    //Reads every non-blank row after the header and turns it into an object
+    private static <T> List<T> readRows(String filePath, Function<CsvFields, T> toObject) throws IOException {
+        List<T> rows = new ArrayList<>();
 
+        //opens the csv file for reading
         try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
             String line = br.readLine(); // header
 
             while ((line = br.readLine()) != null) {
                 if (line.isBlank()) continue;
+                rows.add(toObject.apply(new SplitLine(splitCsvLine(line))));
+            }
+        }
+        return rows;
+    }
 
-                String[] p = splitCsvLine(line);
-
-                int bookId = Integer.parseInt(p[0].trim());
-                String memberId = p[1].trim();
-
-                LocalDate loanDate = LocalDate.parse(p[2].trim());
-                LocalDate dueDate = LocalDate.parse(p[3].trim());
-
-                String returnDateStr = p[4].trim();
-                boolean returned = Boolean.parseBoolean(p[5].trim());
-
-                Book book = findBookById(books, bookId);
-                Member member = findMemberById(members, memberId);
+    //The columns of one split line, trimmed as they are read
+    private record SplitLine(String[] p) implements CsvFields {
 
-                if (book == null) throw new IllegalStateException("Loan refers to missing bookId: " + bookId);
-                if (member == null) throw new IllegalStateException("Loan refers to missing memberId: " + memberId);
+        @Override
+        public String stringField(int field) {
+            return p[field].trim();
+        }
 
-                Loan loan = new Loan(book, member, loanDate);
+        @Override
+        public int intField(int field) {
+            return Integer.parseInt(p[field].trim());
+        }
 
-                // Optional strict check: CSV dueDate must match fixed 14-day rule
-                if (!loan.getDueDate().equals(dueDate)) {
-                    throw new IllegalStateException("CSV dueDate does not match fixed rule for bookId=" + bookId);
-                }
+        @Override
+        public LocalDate dateField(int field) {
+            return LocalDate.parse(p[field].trim());
+        }
 
-                if (returned) {
-                    if (returnDateStr.isEmpty()) {
-                        throw new IllegalStateException("returned=true but returnDate empty for bookId=" + bookId);
-                    }
-                    loan.loadAsReturned(LocalDate.parse(returnDateStr));
-                }
-                loans.add(loan);
-            }
+        @Override
+        public boolean fieldEqualsIgnoreCase(int field, String ascii) {
+            return p[field].trim().equalsIgnoreCase(ascii);
         }
 
-        return loans;
+        @Override
+        public boolean isFieldEmpty(int field) {
+            return p[field].trim().isEmpty();
+        }
     }
 
-    private static String[] splitCsvLine(String line) {
+    //Splits one line on the commas outside quotes, a doubled quote inside quotes is one literal quote (as CsvSaver.escape writes it)
+    static String[] splitCsvLine(String line) {
         List<String> out = new ArrayList<>();
         StringBuilder cur = new StringBuilder();
         boolean inQuotes = false;
@@ -140,7 +184,10 @@ public class CsvLoader {
         for (int i = 0; i < line.length(); i++) {
             char c = line.charAt(i);
 
-            if (c == '"') {
+            if (c == '"' && inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                cur.append('"');
+                i++;
+            } else if (c == '"') {
                 inQuotes = !inQuotes;
             } else if (c == ',' && !inQuotes) {
                 out.add(cur.toString());
@@ -154,19 +201,4 @@ public class CsvLoader {
     }
 
 
-    private static Book findBookById(List<Book> books, int id) {
-        for (Book b : books) {
-            if (b.getId() == id) return b;
-        }
-        return null;
-    }
-
-    private static Member findMemberById(List<Member> members, String memberId) {
-        for (Member m : members) {
-            if (m.getMemID().equals(memberId)) return m;
-        }
-        return null;
-    }
-
-
 }
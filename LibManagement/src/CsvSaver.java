@@ -1,14 +1,19 @@
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 //Util Class that saves updated library data back into CSV files
-//Use after borrow/return so the database stays persistent
+//Checkpoints are incremental: only changed rows are written, as delta segments (books.csv.delta.1, .2, ...) next to the base file
+//CsvLoader applies the deltas on top of the base, mergeDeltas folds them back into a new base file
 public class CsvSaver {
 
-    //Saves all books into books.csv
+    //Saves books into a CSV file (a full books.csv or a delta segment, same format)
     public static void saveBooks(String filePath, List<Book> books) throws IOException {
         try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath))) {
             bw.write("id,title,author,year,category,totalCopies,availableCopies");
@@ -27,7 +32,28 @@ public class CsvSaver {
         }
     }
 
-    //Saves all loans into loans.csv
+    //Saves members into a CSV file, students also get their student ID and department
+    public static void saveMembers(String filePath, List<Member> members) throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath))) {
+            bw.write("type,memberId,name,email,number,maxBooksAllowed,studentId,department");
+            bw.newLine();
+
+            for (Member m : members) {
+                boolean student = m instanceof StudentMember;
+                bw.write((student ? "STU" : "REG") + "," +
+                        escape(m.getMemID()) + "," +
+                        escape(m.getName()) + "," +
+                        escape(m.getEmail()) + "," +
+                        m.getNumber() + "," +
+                        m.getMaxBooksAllowed() + "," +
+                        (student ? escape(((StudentMember) m).getStuID()) : "") + "," +
+                        (student ? escape(((StudentMember) m).getDepartment()) : ""));
+                bw.newLine();
+            }
+        }
+    }
+
+    //Saves loans into a CSV file (a full loans.csv or a delta segment, same format)
     public static void saveLoans(String filePath, List<Loan> loans) throws IOException {
         try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath))) {
             bw.write("bookId,memberId,loanDate,dueDate,returnDate,returned");
@@ -52,9 +78,103 @@ public class CsvSaver {
         }
     }
 
+    //Path of the delta segment with the given sequence number next to a base CSV file
+    public static String deltaPath(String basePath, int seq) {
+        return basePath + ".delta." + seq;
+    }
+
+    //Sequence numbers of the delta segments of a base file, in the order they have to be applied
+    public static List<Integer> deltaSeqs(String basePath) throws IOException {
+        Path base = Path.of(basePath).toAbsolutePath();
+        String prefix = base.getFileName() + ".delta.";
+        List<Integer> seqs = new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(base.getParent())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d+")) {
+                    seqs.add(Integer.parseInt(name.substring(prefix.length())));
+                }
+            }
+        }
+        seqs.sort(null);
+        return seqs;
+    }
+
+    //Moves finished "<file>.tmp" files to their real names, the move is atomic so readers never see a half-written file
+    public static void installTmp(List<String> files) throws IOException {
+        for (String file : files) {
+            Path tmp = Path.of(file + ".tmp");
+            if (Files.exists(tmp)) {
+                Files.move(tmp, Path.of(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+
+    //Flushes a file to disk
+    public static void fsync(String file) throws IOException {
+        try (FileChannel ch = FileChannel.open(Path.of(file), StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+    }
+
+    //Folds every delta segment on disk into new base books/loans files
+    //Only safe while nothing is checkpointing (e.g. offline), a running program merges with prepareMerge/finishMerge
+    public static void mergeDeltas(String booksPath, String membersPath, String loansPath) throws IOException {
+        int upTo = -1;
+        for (int seq : deltaSeqs(booksPath)) upTo = Math.max(upTo, seq);
+        for (int seq : deltaSeqs(loansPath)) upTo = Math.max(upTo, seq);
+        if (upTo < 0) return;
+
+        prepareMerge(booksPath, membersPath, loansPath, upTo);
+        finishMerge(booksPath, loansPath);
+    }
+
+    //Writes new base files holding the base plus the deltas up to and including upTo, as .tmp files
+    //A marker then records upTo, so recoverMerge can finish a merge that was interrupted and deltas are never applied twice
+    //upTo must be a checkpoint whose segments are all installed, segments after it are left alone
+    public static void prepareMerge(String booksPath, String membersPath, String loansPath, int upTo) throws IOException {
+        List<Book> books = CsvLoader.loadBooks(booksPath, upTo);
+        List<Member> members = CsvLoader.loadMembers(membersPath);
+        List<Loan> loans = CsvLoader.loadLoans(loansPath, books, members, upTo);
+
+        saveBooks(booksPath + ".tmp", books);
+        saveLoans(loansPath + ".tmp", loans);
+        fsync(booksPath + ".tmp");
+        fsync(loansPath + ".tmp");
+
+        Files.writeString(mergeMarker(booksPath), Integer.toString(upTo));
+        fsync(mergeMarker(booksPath).toString());
+    }
+
+    //Finishes a merge that was interrupted, call before loading the CSV files
+    public static void recoverMerge(String booksPath, String loansPath) throws IOException {
+        if (Files.exists(mergeMarker(booksPath))) {
+            finishMerge(booksPath, loansPath);
+        }
+    }
+
+    //Installs the merged bases, then deletes the deltas they contain and the marker
+    //A running program calls it under the same lock as its checkpoints, so no segment is installed halfway through
+    public static void finishMerge(String booksPath, String loansPath) throws IOException {
+        int upTo = Integer.parseInt(Files.readString(mergeMarker(booksPath)).trim());
+
+        installTmp(List.of(booksPath, loansPath));
+        for (String basePath : new String[]{booksPath, loansPath}) {
+            for (int seq : deltaSeqs(basePath)) {
+                if (seq <= upTo) Files.delete(Path.of(deltaPath(basePath, seq)));
+            }
+        }
+        Files.delete(mergeMarker(booksPath));
+    }
+
+    private static Path mergeMarker(String booksPath) {
+        return Path.of(booksPath + ".merge");
+    }
+
     // Minimal CSV escaping (handles commas/quotes)
     // wraps text in quotes if it contains commas or quotes
-    private static String escape(String s) {
+    static String escape(String s) {
         if (s == null) return "";
         if (s.contains(",") || s.contains("\"")) {
             s = s.replace("\"", "\"\"");
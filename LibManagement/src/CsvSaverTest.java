@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CsvSaverTest {
+
+    @TempDir
+    Path tempDir;
+
+    //Writes a small library to the temp folder and returns the folder
+    private Path writeLibrary() throws Exception {
+        return TestLibraryFiles.write(tempDir,
+                "1,Rising Storm,Erin Hunter,2004,Fantasy,2,2\n" +
+                "2,Tintenblut,Cornelia Funke,2005,Fantasy,1,1\n",
+                "REG,M1,Charlie D,m1@test.com,117806,2,,\n" +
+                "STU,M2,Nisa C,m2@test.com,124031,4,S9510,BIO\n",
+                "1,M1,2025-01-01,2025-01-15,,false\n");
+    }
+
+    private LibManager load(Path dir) throws Exception {
+        LibManager manager = new LibManager();
+        manager.loadFromCsv(dir.resolve("books.csv").toString(), dir.resolve("members.csv").toString(),
+                dir.resolve("loans.csv").toString());
+        return manager;
+    }
+
+    //Turns the loans into comparable rows
+    private List<String> rows(LibManager manager) {
+        List<String> rows = new ArrayList<>();
+        for (Loan l : manager.getLoans()) {
+            rows.add(l.getBook().getId() + "," + l.getMember().getMemID() + "," + l.getLoanDate() + "," + l.getReturnDate());
+        }
+        for (Book b : manager.getBooks()) {
+            rows.add("#" + b.getId() + "=" + b.getAvailableCopies());
+        }
+        return rows;
+    }
+
+    //Testing that base + delta segments load back to exactly the state that was checkpointed
+    @Test
+    void incrementalCheckpoints_rebuildSameState() throws Exception {
+        Path dir = writeLibrary();
+        String books = dir.resolve("books.csv").toString();
+        String loans = dir.resolve("loans.csv").toString();
+
+        LibManager manager = load(dir);
+        Member m1 = manager.findMemberById("M1");
+        Member m2 = manager.findMemberById("M2");
+        Book b1 = manager.findBookById(1);
+        Book b2 = manager.findBookById(2);
+
+        manager.returnBook(m1, b1, LocalDate.of(2025, 1, 10));
+        manager.borrowBook(m2, b2, LocalDate.of(2025, 1, 11));
+        manager.checkpoint(books, loans);
+
+        manager.borrowBook(m2, b1, LocalDate.of(2025, 1, 12));
+        manager.returnBook(m2, b2, LocalDate.of(2025, 1, 20));
+        manager.addBook(new Book(3, "Jabberwocky", "Lewis Carroll", 1881, "Fantasy", 6));
+        manager.checkpoint(books, loans);
+
+        assertEquals(List.of(1, 2), CsvSaver.deltaSeqs(loans));
+        assertEquals(rows(manager), rows(load(dir)));
+    }
+
+    //Testing that merging the deltas into the base keeps the same state and removes the segments
+    @Test
+    void mergeDeltas_foldsSegmentsIntoBase() throws Exception {
+        Path dir = writeLibrary();
+        String books = dir.resolve("books.csv").toString();
+        String members = dir.resolve("members.csv").toString();
+        String loans = dir.resolve("loans.csv").toString();
+
+        LibManager manager = load(dir);
+        manager.returnBook(manager.findMemberById("M1"), manager.findBookById(1), LocalDate.of(2025, 1, 10));
+        manager.checkpoint(books, loans);
+        manager.borrowBook(manager.findMemberById("M1"), manager.findBookById(1), LocalDate.of(2025, 1, 12));
+        manager.checkpoint(books, loans);
+
+        CsvSaver.mergeDeltas(books, members, loans);
+
+        assertTrue(CsvSaver.deltaSeqs(books).isEmpty());
+        assertTrue(CsvSaver.deltaSeqs(loans).isEmpty());
+        assertEquals(rows(manager), rows(load(dir)));
+        assertEquals(3, Files.readAllLines(dir.resolve("loans.csv")).size());
+    }
+
+    //Testing that a merge only folds the segments up to the checkpoint it was given and keeps the later ones
+    @Test
+    void prepareMerge_leavesSegmentsAfterUpToInPlace() throws Exception {
+        Path dir = writeLibrary();
+        String books = dir.resolve("books.csv").toString();
+        String members = dir.resolve("members.csv").toString();
+        String loans = dir.resolve("loans.csv").toString();
+
+        LibManager manager = load(dir);
+        manager.returnBook(manager.findMemberById("M1"), manager.findBookById(1), LocalDate.of(2025, 1, 10));
+        manager.checkpoint(books, loans);
+        manager.borrowBook(manager.findMemberById("M2"), manager.findBookById(2), LocalDate.of(2025, 1, 12));
+        manager.checkpoint(books, loans);
+
+        CsvSaver.prepareMerge(books, members, loans, 1);
+        CsvSaver.finishMerge(books, loans);
+
+        assertEquals(List.of(2), CsvSaver.deltaSeqs(books));
+        assertEquals(List.of(2), CsvSaver.deltaSeqs(loans));
+        assertEquals(rows(manager), rows(load(dir)));
+    }
+}
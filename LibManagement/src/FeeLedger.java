@@ -0,0 +1,197 @@
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+* Lifetime late fees of each member, kept in cents so sums stay exact
+* Nothing records payments, so these are fees ever charged, not what a member still owes
+* Charged: fees of returned loans, added when a loan comes back (or is loaded as returned, history included), O(1) to read
+* Accrued: fees building up on loans that are still out and overdue, recomputed in bulk by assess(asOf)
+* The assessment runs over an array of the overdue loans with fork/join, each leaf adds into one shared primitive
+* array by member ordinal and notes each loan's share in a parallel fee array, so nothing is allocated per loan
+* The shares are copied onto the loans only when the assessment is published, under the same lock settle takes,
+* so a return racing the assessment sees either the old share or the new one, never a mix
+* When an assessed loan is returned its share moves from accrued to charged (settle), so no fee is counted twice
+ */
+
+public class FeeLedger {
+
+    //Leaves of the bulk assessment handle this many loans
+    private static final int ASSESS_CHUNK = 8192;
+
+    //A member's running total, the ordinal is its slot in the accrued arrays
+    private static final class Account {
+        final int ordinal;
+        final AtomicLong chargedCents = new AtomicLong();
+
+        Account(int ordinal){
+            this.ordinal = ordinal;
+        }
+    }
+
+    //Result of the last bulk assessment, replaced as a whole by the next one
+    private record Accrual(long id, LocalDate asOf, AtomicLongArray cents) {}
+
+    private final Map<Member, Account> accounts = new ConcurrentHashMap<>();
+    private volatile Accrual accrual = new Accrual(0, null, new AtomicLongArray(0));
+    //serializes settling returns with publishing an assessment, held only for those short steps
+    private final Object accrualLock = new Object();
+    private long lastAccrualId;
+
+    //Adds a fee to the member's balance
+    public void charge(Member member, double fee){
+        if (fee < 0){
+            throw new IllegalArgumentException("Fee must not be negative");
+        }
+        if (fee == 0) return;
+        account(member).chargedCents.addAndGet(toCents(fee));
+    }
+
+    //Charges the fee of a returned loan and takes back what the current assessment accrued on it
+    public void settle(Loan loan, double fee){
+        synchronized (accrualLock){
+            charge(loan.getMember(), fee);
+            releaseAccrued(loan, accrual);
+        }
+    }
+
+    //Moves a loan's accrued share out of the assessment it belongs to, if that is the current one
+    private void releaseAccrued(Loan loan, Accrual current){
+        if (loan.accrualId == 0 || loan.accrualId != current.id()) return;
+        Account account = accounts.get(loan.getMember());
+        current.cents().addAndGet(account.ordinal, -loan.accruedCents);
+        loan.accrualId = 0;
+        loan.accruedCents = 0;
+    }
+
+    //Lifetime fees charged on the member's returned loans, loaded history included, O(1)
+    public double getBalance(Member member){
+        Account account = accounts.get(member);
+        return account == null ? 0.0 : account.chargedCents.get() / 100.0;
+    }
+
+    //Fees accrued on the member's open overdue loans as of the last assessment, O(1)
+    public double getAccrued(Member member){
+        Account account = accounts.get(member);
+        AtomicLongArray cents = accrual.cents();
+        if (account == null || account.ordinal >= cents.length()) return 0.0;
+        return cents.get(account.ordinal) / 100.0;
+    }
+
+    //Lifetime balance plus accrued fees
+    public double getOutstanding(Member member){
+        return getBalance(member) + getAccrued(member);
+    }
+
+    //Date of the last assessment, null before the first one
+    public LocalDate getAssessedAsOf(){
+        return accrual.asOf();
+    }
+
+    //Recomputes the accrued fees of every member from the given open overdue loans, on the common pool
+    public long assess(List<Loan> overdueLoans, LocalDate asOf){
+        return assess(overdueLoans, asOf, ForkJoinPool.commonPool());
+    }
+
+    //Same on a given pool, returns the total accrued in cents (one assessment at a time)
+    public synchronized long assess(List<Loan> overdueLoans, LocalDate asOf, ForkJoinPool pool){
+        //one sequential pass resolves the member ordinals, so the parallel pass only touches arrays
+        Loan[] loans = overdueLoans.toArray(new Loan[0]);
+        int[] ordinals = new int[loans.length];
+        for (int i = 0; i < loans.length; i++){
+            ordinals[i] = account(loans[i].getMember()).ordinal;
+        }
+
+        //the workers only write these arrays, the loans' own fields are left to the publishing step below
+        long[] fees = new long[loans.length];
+        AtomicLongArray cents = new AtomicLongArray(accounts.size());
+        AssessTask task = new AssessTask(loans, ordinals, fees, asOf.toEpochDay(), cents, 0, loans.length);
+        pool.invoke(task);
+
+        long total = task.total;
+        synchronized (accrualLock){
+            long id = ++lastAccrualId;
+            accrual = new Accrual(id, asOf, cents);
+            for (int i = 0; i < loans.length; i++){
+                if (fees[i] == 0) continue;
+                if (loans[i].isReturned()){
+                    //returned while the assessment ran, settled already (against the old assessment) or settling
+                    //once this lock is free, either way its fee is charged and must not stay accrued
+                    cents.addAndGet(ordinals[i], -fees[i]);
+                    total -= fees[i];
+                } else {
+                    //a return from here on waits for this lock, so it settles against this assessment
+                    loans[i].accruedCents = fees[i];
+                    loans[i].accrualId = id;
+                }
+            }
+        }
+        return total;
+    }
+
+    //Fee of one overdue loan for [lo, hi) of the array, split in halves down to ASSESS_CHUNK
+    //Writes only fees[i] and the fresh cents array, never the shared Loan objects
+    //Never serialized, it only lives for one pool.invoke
+    @SuppressWarnings("serial")
+    private static final class AssessTask extends RecursiveAction {
+        private final Loan[] loans;
+        private final int[] ordinals;
+        private final long[] fees;
+        private final long asOfDay;
+        private final AtomicLongArray cents;
+        private final int lo;
+        private final int hi;
+        private long total;
+
+        AssessTask(Loan[] loans, int[] ordinals, long[] fees, long asOfDay, AtomicLongArray cents, int lo, int hi){
+            this.loans = loans;
+            this.ordinals = ordinals;
+            this.fees = fees;
+            this.asOfDay = asOfDay;
+            this.cents = cents;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute(){
+            if (hi - lo > ASSESS_CHUNK){
+                int mid = (lo + hi) >>> 1;
+                AssessTask left = new AssessTask(loans, ordinals, fees, asOfDay, cents, lo, mid);
+                AssessTask right = new AssessTask(loans, ordinals, fees, asOfDay, cents, mid, hi);
+                invokeAll(left, right);
+                total = left.total + right.total;
+                return;
+            }
+            long sum = 0;
+            for (int i = lo; i < hi; i++){
+                Loan loan = loans[i];
+                long daysLate = asOfDay - loan.getDueDate().toEpochDay();
+                if (daysLate <= 0) continue;
+                long fee = toCents(loan.getMember().calcLateFee(daysLate));
+                fees[i] = fee;
+                cents.addAndGet(ordinals[i], fee);
+                sum += fee;
+            }
+            total = sum;
+        }
+    }
+
+    //The member's account, opened on first use
+    private Account account(Member member){
+        Account account = accounts.get(member);
+        if (account != null) return account;
+        synchronized (accounts){
+            return accounts.computeIfAbsent(member, m -> new Account(accounts.size()));
+        }
+    }
+
+    private static long toCents(double fee){
+        return Math.round(fee * 100);
+    }
+}
@@ -0,0 +1,172 @@
+import org.junit.jupiter.api.Test;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FeeLedgerTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 1);
+
+    //Testing that late returns are charged to the member's balance at their member type's rate
+    @Test
+    void returns_chargeTheMembersBalance() {
+        LibManager manager = new LibManager();
+        Book book = new Book(1, "Dune", "Herbert", 1965, "SciFi", 2);
+        Member regular = new Member("A", "M1", "a@test.com", 1, 5);
+        StudentMember student = new StudentMember("B", "S1", "b@test.com", 2, "ST1", "CS");
+        manager.addBook(book);
+        manager.addMember(regular);
+        manager.addMember(student);
+
+        //due 14 days after borrowing, returned 3 days late
+        manager.borrowBook(regular, book, DAY);
+        manager.borrowBook(student, book, DAY);
+        assertEquals(15.0, manager.returnBook(regular, book, DAY.plusDays(17)));
+        manager.returnBook(student, book, DAY.plusDays(17));
+        manager.borrowBook(regular, book, DAY);
+        manager.returnBook(regular, book, DAY.plusDays(10));
+
+        assertEquals(15.0, manager.getFeeBalance(regular));
+        assertEquals(7.5, manager.getFeeBalance(student));
+    }
+
+    //Testing that the assessment only accrues on loans that are still out and overdue
+    @Test
+    void assessFees_accruesOnOpenOverdueLoansOnly() {
+        LibManager manager = new LibManager();
+        Book book = new Book(1, "Dune", "Herbert", 1965, "SciFi", 3);
+        Member regular = new Member("A", "M1", "a@test.com", 1, 5);
+        StudentMember student = new StudentMember("B", "S1", "b@test.com", 2, "ST1", "CS");
+        Member onTime = new Member("C", "M2", "c@test.com", 3, 5);
+        manager.addBook(book);
+        manager.addMember(regular);
+        manager.addMember(student);
+        manager.addMember(onTime);
+        manager.borrowBook(regular, book, DAY);
+        manager.borrowBook(student, book, DAY);
+        manager.borrowBook(onTime, book, DAY.plusDays(10));
+
+        //14 + 4 days after DAY: the first two loans are 4 days late
+        assertEquals(30.0, manager.assessFees(DAY.plusDays(18)));
+        assertEquals(20.0, manager.getOutstandingFees(regular));
+        assertEquals(10.0, manager.getOutstandingFees(student));
+        assertEquals(0.0, manager.getOutstandingFees(onTime));
+        assertEquals(0.0, manager.getFeeBalance(regular));
+    }
+
+    //Testing that a return after an assessment moves the loan's fee from accrued to charged instead of counting it twice
+    @Test
+    void returnAfterAssessment_countsTheFeeOnce() {
+        LibManager manager = new LibManager();
+        Book book = new Book(1, "Dune", "Herbert", 1965, "SciFi", 2);
+        Member member = new Member("A", "M1", "a@test.com", 1, 5);
+        Book other = new Book(2, "Emma", "Austen", 1815, "Classic", 1);
+        manager.addBook(book);
+        manager.addBook(other);
+        manager.addMember(member);
+        manager.borrowBook(member, book, DAY);
+        manager.borrowBook(member, other, DAY);
+
+        assertEquals(40.0, manager.assessFees(DAY.plusDays(18)));
+        assertEquals(40.0, manager.getOutstandingFees(member));
+
+        assertEquals(20.0, manager.returnBook(member, book, DAY.plusDays(18)));
+        assertEquals(20.0, manager.getFeeBalance(member));
+        assertEquals(40.0, manager.getOutstandingFees(member));
+
+        //the next assessment no longer sees the returned loan
+        assertEquals(25.0, manager.assessFees(DAY.plusDays(19)));
+        assertEquals(45.0, manager.getOutstandingFees(member));
+    }
+
+    //Testing that splitting a large run across fork/join tasks gives the same totals
+    @Test
+    void assess_splitsLargeRunsAcrossTasks_withTheSameTotals() {
+        FeeLedger ledger = new FeeLedger();
+        Book book = new Book(1, "Dune", "Herbert", 1965, "SciFi", 1);
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            members.add(new Member("M" + i, "M" + i, "m@test.com", i, 5));
+        }
+        List<Loan> loans = new ArrayList<>();
+        long expected = 0;
+        for (int i = 0; i < 50_000; i++) {
+            Member member = members.get(i % members.size());
+            int daysLate = i % 20;
+            loans.add(new Loan(book, member, DAY.minusDays(14 + daysLate)));
+            expected += 500L * daysLate;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, ledger.assess(loans, DAY, pool));
+        } finally {
+            pool.shutdown();
+        }
+        double perMember = 0;
+        for (Member member : members) perMember += ledger.getAccrued(member);
+        assertEquals(expected / 100.0, perMember, 0.001);
+        assertEquals(DAY, ledger.getAssessedAsOf());
+    }
+
+    //Testing that returns settled while an assessment runs on another pool are neither lost nor counted twice
+    @Test
+    void returnsDuringAssessment_countEachFeeOnce() throws Exception {
+        Book book = new Book(1, "Dune", "Herbert", 1965, "SciFi", 1);
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            members.add(new Member("M" + i, "M" + i, "m@test.com", i, 5));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int round = 0; round < 5; round++) {
+                FeeLedger ledger = new FeeLedger();
+                List<Loan> loans = new ArrayList<>();
+                for (int i = 0; i < 50_000; i++) {
+                    loans.add(new Loan(book, members.get(i % members.size()), DAY.minusDays(15 + i % 20)));
+                }
+                CountDownLatch start = new CountDownLatch(1);
+                Thread assessing = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    ledger.assess(loans, DAY, pool);
+                });
+                assessing.start();
+
+                //every third loan comes back while the assessment runs
+                start.countDown();
+                for (int i = 0; i < loans.size(); i += 3) {
+                    Loan loan = loans.get(i);
+                    loan.loadAsReturned(DAY);
+                    ledger.settle(loan, loan.getMember().calcLateFee(1 + i % 20));
+                }
+                assessing.join();
+
+                long charged = 0;
+                long accrued = 0;
+                for (int i = 0; i < loans.size(); i++) {
+                    if (i % 3 == 0) charged += 500L * (1 + i % 20);
+                    else accrued += 500L * (1 + i % 20);
+                }
+                long balance = 0;
+                long outstanding = 0;
+                for (Member member : members) {
+                    balance += Math.round(ledger.getBalance(member) * 100);
+                    outstanding += Math.round(ledger.getAccrued(member) * 100);
+                }
+                assertEquals(charged, balance);
+                assertEquals(accrued, outstanding);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
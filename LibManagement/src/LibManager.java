@@ -1,164 +1,845 @@
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.io.*;
 
+/*
+* Central class for the library, holds the books, members and loans and enforces the borrowing rules
+* Safe to share between threads: borrow/return lock only the stripes of the book and member involved,
+* adding books/members and searching go through a read/write lock on the catalog
+ */
 
 public class LibManager {
-    private List<Book> books;
-    private List<Member> members;
-    private List<Loan> loans;
+    //Append-only, getBooks/getLoans hand out an immutable snapshot of the current version without copying
+    private VersionedList<Book> books;
+    private VersionedList<Member> members;
+    //Swapped for a list of only the open loans when returned ones are archived, hence volatile
+    private volatile VersionedList<Loan> loans;
+    //Stamps every change with a commit version so read transactions see one consistent point in time
+    private final VersionManager versions = new VersionManager(this::snapshotAt);
 
+    //Open loans by due date, answers overdue/due-soon queries and announces loans as they go overdue
+    private final OverdueIndex overdueIndex = new OverdueIndex();
+
+    //Late fees per member: charged on returns, accrued on open overdue loans by assessFees
+    private final FeeLedger feeLedger = new FeeLedger();
+
+    //Returned loans with per-member/per-book indexes, what getLoanHistory reads
+    private final LoanHistory history;
+    //When true, returned loans leave the loans list at load and at every checkpoint and only live in the history
+    private final boolean archiveReturned;
+
+    //Primary-key indexes so lookups don't walk the whole list
+    private Map<Integer, Book> booksById;
+    private Map<String, Member> membersById;
+
+    //Open (not returned) loans per member, so the borrow/return checks only look at that member's loans
+    private Map<Member, List<Loan>> activeLoansByMember;
+
+    //Word index over title/author/category, ordinals line up with the books list
+    private TokenIndex tokenIndex;
+    //Substring index used by searchBooks, ordinals line up with the books list
+    private TrigramIndex trigramIndex;
+    //Primitive columns for filters and numeric sorts, ordinals line up with the books list
+    private ColumnarCatalog columns;
+    //Shared instances of repeated author/category/department values, owned by this library and handed to its loaders
+    private final StringDictionary dictionary = new StringDictionary();
+    private Map<Integer, Integer> ordinalsById;
+    //Every browse order kept sorted, updated on add/borrow/return instead of sorting on each browse
+    private BookOrderIndex orderIndex;
+
+    //Striped locks for borrow/return, a book and a member each map to one stripe
+    private final ReentrantLock[] stripes;
+    //Guards the books/members lists and the search indexes (writers: addBook/addMember, readers: searches)
+    private final ReentrantReadWriteLock catalogLock = new ReentrantReadWriteLock();
+    //Borrows/returns hold the read side, a checkpoint holds the write side so no operation falls between the CSVs and the journal
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    //Write-ahead journal, every borrow/return is queued here while its locks are held (null when not persisting)
+    private LoanJournal journal;
+
+    //Rows changed since the last checkpoint, only these are written to the next delta segment
+    private final Set<Book> dirtyBooks = Collections.synchronizedSet(new LinkedHashSet<>());
+    private final Set<Loan> dirtyLoans = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    //Delta segments are folded back into the base files in the background once this many have piled up
+    private static final int MERGE_AFTER_DELTAS = 8;
+    private String membersPath;
+    //runs the merges and snapshot rebuilds, see background()
+    private ExecutorService mergeExecutor;
+    private final AtomicBoolean mergeQueued = new AtomicBoolean();
+    //why the last background merge failed, null when it succeeded
+    private volatile Exception mergeFailure;
+    //snapshot kept next to the CSV files (null when loaded without one), rebuilt after each merge
+    private String snapshotPath;
+    //why the snapshot could not be written, null when it was
+    private volatile Exception snapshotFailure;
+    //never reused while running, so a background merge can't delete a segment written after it started
+    private int lastDeltaSeq;
+
+    //Default manager with a single lock stripe, fine for one user at a time
     public LibManager(){
-        this.books = new ArrayList<>();
-        this.members = new ArrayList<>();
-        this.loans = new ArrayList<>();
+        this(1);
+    }
+
+    //Concurrent manager, more stripes let borrows/returns on unrelated books and members run in parallel
+    //Loan history is kept in memory next to the loans list
+    public LibManager(int lockStripes){
+        this(lockStripes, new LoanHistory(), false);
+    }
+
+    //Manager that moves returned loans out of the loans list into the given history (usually file-backed)
+    //getLoans then only holds open loans and loans returned since the last checkpoint, older ones come from getLoanHistory
+    public LibManager(int lockStripes, LoanHistory history){
+        this(lockStripes, history, true);
+    }
+
+    private LibManager(int lockStripes, LoanHistory history, boolean archiveReturned){
+        if(lockStripes <= 0){
+            throw new IllegalArgumentException("Lock stripes must be greater than 0");
+        }
+        this.books = new VersionedList<>();
+        this.members = new VersionedList<>();
+        this.loans = new VersionedList<>();
+        this.booksById = new ConcurrentHashMap<>();
+        this.membersById = new ConcurrentHashMap<>();
+        this.activeLoansByMember = new ConcurrentHashMap<>();
+        this.tokenIndex = new TokenIndex();
+        this.trigramIndex = new TrigramIndex();
+        this.columns = new ColumnarCatalog(dictionary);
+        this.ordinalsById = new ConcurrentHashMap<>();
+        this.orderIndex = new BookOrderIndex();
+        this.history = history;
+        this.archiveReturned = archiveReturned;
+        //the history stores IDs, its pages come back with this library's objects
+        history.bind(this::findBookById, this::findMemberById);
+        this.stripes = new ReentrantLock[lockStripes];
+        for (int i = 0; i < lockStripes; i++){
+            stripes[i] = new ReentrantLock();
+        }
     }
 
     //Methods
 
     //Finds book in the library using it's ID
     public Book findBookById(int id){
-        for (Book b : books){
-            if(b.getId() == id) return b;
-        }
-        return null;
+        return booksById.get(id);
     }
 
-    //Finds registered member by their ID
+    //Finds registered member by their ID (case-insensitive)
     public Member findMemberById(String memberId){
-        for(Member m : members){
-            if(m.getMemID().equalsIgnoreCase(memberId)) return m;
+        if(memberId == null) return null;
+        return membersById.get(memberKey(memberId));
+    }
+
+    //Case-folds a member ID the same way for both indexing and lookups
+    private static String memberKey(String memberId){
+        return memberId.toLowerCase(Locale.ROOT);
+    }
+
+    //Picks the stripe for a hash, spreading the high bits so nearby IDs land on different stripes
+    private int stripeFor(int hash){
+        return Math.floorMod(hash ^ (hash >>> 16), stripes.length);
+    }
+
+    private int stripeFor(Book book){
+        return stripeFor(Integer.hashCode(book.getId()));
+    }
+
+    private int stripeFor(Member member){
+        return stripeFor(memberKey(member.getMemID()).hashCode());
+    }
+
+    //Locks the member's and the book's stripes, always the lower index first so two threads can never deadlock
+    private void lockBoth(int memberStripe, int bookStripe){
+        stripes[Math.min(memberStripe, bookStripe)].lock();
+        if(memberStripe != bookStripe){
+            stripes[Math.max(memberStripe, bookStripe)].lock();
         }
-        return null;
+    }
+
+    private void unlockBoth(int memberStripe, int bookStripe){
+        if(memberStripe != bookStripe){
+            stripes[Math.max(memberStripe, bookStripe)].unlock();
+        }
+        stripes[Math.min(memberStripe, bookStripe)].unlock();
     }
 
     //Counts how many active loans a member has that hadn't been returned yet.
     private int countActiveLoans(Member member){
-        int count = 0;
-        for (Loan loan : loans){
-            if(!loan.isReturned() && loan.getMember().equals(member)){
-                count++;
+        List<Loan> active = activeLoansByMember.get(member);
+        return active == null ? 0 : active.size();
+    }
+
+    //Finds the member's open loan for a book, only looking at that member's open loans
+    private Loan findActiveLoan(Member member, Book book){
+        List<Loan> active = activeLoansByMember.get(member);
+        if(active == null) return null;
+        for(Loan loan : active){
+            if(loan.getBook().equals(book)){
+                return loan;
             }
         }
-        return count;
+        return null;
+    }
+
+    //Adds a new loan to the loan list and, if it is still open, to the member's active loans
+    //Part of the caller's commit when given one (a borrow also commits the new availability), else its own commit
+    private void recordLoan(Loan loan){
+        long version = versions.beginCommit(() -> appendLoan(loan));
+        try {
+            recordLoan(loan, version);
+        } finally {
+            endCommit(version);
+        }
+    }
+
+    //The loan's row in the loans list, appended while its commit takes its version
+    //A loan loaded as returned only stays in the list when nothing is archived
+    private void appendLoan(Loan loan){
+        if(!loan.isReturned() || !archiveReturned){
+            loans.add(loan);
+        }
+    }
+
+    private void recordLoan(Loan loan, long version){
+        if(!loan.isReturned()){
+            activeLoansByMember.computeIfAbsent(loan.getMember(), m -> new ArrayList<>()).add(loan);
+            overdueIndex.add(loan);
+            return;
+        }
+        //a loan loaded as returned goes straight to history
+        loan.returnedVersion = version;
+        history.add(loan);
+        feeLedger.charge(loan.getMember(), lateFee(loan.getMember(), loan.getDueDate(), loan.getReturnDate()));
+    }
+
+    //The lists as they are now, VersionManager takes these right after a commit's appends
+    private VersionManager.Published snapshotAt(long version){
+        return new VersionManager.Published(version, books.snapshot(), members.snapshot(), loans.snapshot());
+    }
+
+    //Where a load sends the returned loans of the base files: straight into the history when archiving (they would leave
+    //the loans list anyway), otherwise nowhere and they come back with the other rows
+    private Consumer<Loan> returnedSink(){
+        return archiveReturned ? this::archiveLoaded : null;
+    }
+
+    //A returned loan streamed by a loader: written to the history and charged, it never goes in the loans list
+    private void archiveLoaded(Loan loan){
+        history.addLoaded(loan);
+        feeLedger.charge(loan.getMember(), lateFee(loan.getMember(), loan.getDueDate(), loan.getReturnDate()));
+    }
+
+    //Publishes a commit, after the ones that took their versions before it
+    private void endCommit(long version){
+        versions.endCommit(version);
     }
 
     //Borrows a book to a member on a given date while enforcing logic rules, then creates a new loan and reduces the book's available copies
+    //Waits until the borrow is in the journal, an UncheckedIOException means it is applied but not durable yet
+    //(the next checkpoint still writes it to the CSV files)
     public boolean borrowBook(Member member, Book book, LocalDate loanDate){
-        if(!members.contains(member)){
+        awaitDurable(borrowBookAsync(member, book, loanDate));
+        return true;
+    }
+
+    //Same as borrowBook, but returns as soon as the borrow is applied in memory
+    //The future completes once the journal has it on disk, rule violations are still thrown right away
+    public CompletableFuture<Void> borrowBookAsync(Member member, Book book, LocalDate loanDate){
+        checkRegistered(member, book);
+
+        //the limit, duplicate and copy checks plus the update happen under both locks so they can't interleave
+        CompletableFuture<Void> durable = CompletableFuture.completedFuture(null);
+        int memberStripe = stripeFor(member);
+        int bookStripe = stripeFor(book);
+        checkpointLock.readLock().lock();
+        lockBoth(memberStripe, bookStripe);
+        try {
+            int activeLoans = countActiveLoans(member);
+            if(activeLoans>=member.getMaxBooksAllowed()){
+                throw new IllegalStateException("Already reached max borrow limit");
+            }
+            if (hasActiveLoan(member, book)){
+                throw new IllegalStateException("Member Already has this book on loan");
+            }
+            if (!book.borrowCopy()){
+                throw new IllegalStateException("No Available copies of this book");
+            }
+
+            Loan loan = new Loan(book, member, loanDate);
+            long version = versions.beginCommit(() -> appendLoan(loan));
+            try {
+                recordLoan(loan, version);
+                versions.availabilityChanged(book, book.getAvailableCopies(), version);
+            } finally {
+                endCommit(version);
+            }
+            updateAvailability(book);
+            dirtyBooks.add(book);
+            dirtyLoans.add(loan);
+
+            //queued while the locks are held, so the journal order matches the order the operations happened in
+            if (journal != null){
+                durable = journal.appendBorrow(book, member, loanDate);
+            }
+        } finally {
+            unlockBoth(memberStripe, bookStripe);
+            checkpointLock.readLock().unlock();
+        }
+
+        return durable;
+    }
+
+    //Borrow/return only take members and books that are in this library
+    private void checkRegistered(Member member, Book book){
+        if(member == null || findMemberById(member.getMemID()) != member){
             throw new IllegalStateException("Member is not registered in Library");
         }
 
-        if(!books.contains(book)){
+        if(book == null || findBookById(book.getId()) != book){
             throw new IllegalStateException("Book not found in library");
         }
+    }
 
-        int activeLoans = countActiveLoans(member);
-        if(activeLoans>=member.getMaxBooksAllowed()){
-            throw new IllegalStateException("Already reached max borrow limit");
-        }
-        if (hasActiveLoan(member, book)){
-            throw new IllegalStateException("Member Already has this book on loan");
-        }
-        if (!book.borrowCopy()){
-            throw new IllegalStateException("No Available copies of this book");
+    //Waits for a journal write outside of any lock, so other operations can join the same group commit
+    private static <T> T awaitDurable(CompletableFuture<T> durable){
+        try {
+            return durable.join();
+        } catch (CompletionException e){
+            if (e.getCause() instanceof IOException io){
+                throw new UncheckedIOException("Applied in memory but could not be written to the journal", io);
+            }
+            throw e;
         }
+    }
 
-        Loan loan = new Loan(book, member, loanDate);
-        loans.add(loan);
-
-        return true;
+    //Copies a book's availability into the column store and the availability order
+    //Called while the book's stripe is held so updates land in order, the read side keeps addBook from growing the columns meanwhile
+    private void updateAvailability(Book book){
+        catalogLock.readLock().lock();
+        try {
+            columns.setAvailableCopies(ordinalsById.get(book.getId()), book.getAvailableCopies());
+            orderIndex.availabilityChanged(book);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
     }
 
     //Checks if the member has the same book on an active loan to prevent borrowing the same book twice
     private boolean hasActiveLoan(Member member, Book book){
-        for(Loan loan : loans){
-            if(!loan.isReturned() && loan.getMember().equals(member) && loan.getBook().equals(book)){
-                return true;
-            }
-        }
-        return false;
+        return findActiveLoan(member, book) != null;
     }
 
     //marks the loan as returned and checks for the due date, then calculates late fee if it was returned later then it's due date.
+    //Waits until the return is in the journal, an UncheckedIOException means it is applied but not durable yet
     public double returnBook(Member member, Book book, LocalDate returnDate){
-        for (Loan loan : loans){
-            if(!loan.isReturned() && loan.getMember().equals(member) && loan.getBook().equals(book)){
-                loan.markReturned(returnDate);
+        return awaitDurable(returnBookAsync(member, book, returnDate));
+    }
 
-                long daysLate = ChronoUnit.DAYS.between(loan.getDueDate(), returnDate);
-                if (daysLate<= 0){
-                    return 0.0;
-                }
+    //Same as returnBook, but returns as soon as the return is applied in memory
+    //The future completes with the late fee once the journal has it on disk
+    public CompletableFuture<Double> returnBookAsync(Member member, Book book, LocalDate returnDate){
+        //checked before the stripes are picked, a null member or book has no stripe
+        checkRegistered(member, book);
+        Loan loan;
+        CompletableFuture<Void> durable = CompletableFuture.completedFuture(null);
+        int memberStripe = stripeFor(member);
+        int bookStripe = stripeFor(book);
+        checkpointLock.readLock().lock();
+        lockBoth(memberStripe, bookStripe);
+        try {
+            loan = findActiveLoan(member, book);
+            if(loan == null){
+                throw new IllegalStateException("Active loan not found for this member or book");
+            }
+
+            long version = versions.beginCommit();
+            try {
+                loan.markReturned(returnDate);
+                loan.returnedVersion = version;
+                //only queued, the history indexes are built when history is read or at the next checkpoint
+                history.add(loan);
+                versions.availabilityChanged(book, book.getAvailableCopies(), version);
+            } finally {
+                endCommit(version);
+            }
+            activeLoansByMember.get(member).remove(loan);
+            overdueIndex.remove(loan);
+            updateAvailability(book);
+            dirtyBooks.add(book);
+            dirtyLoans.add(loan);
 
-                return member.calcLateFee(daysLate);
+            if (journal != null){
+                durable = journal.appendReturn(book, member, returnDate);
             }
+        } finally {
+            unlockBoth(memberStripe, bookStripe);
+            checkpointLock.readLock().unlock();
         }
 
-        throw new IllegalStateException("Active loan not found for this member or book");
+        double fee = lateFee(member, loan.getDueDate(), returnDate);
+        feeLedger.settle(loan, fee);
+        return durable.thenApply(v -> fee);
+    }
+
+    //Fee for returning on returnDate a loan due on dueDate, 0 when it wasn't late
+    private static double lateFee(Member member, LocalDate dueDate, LocalDate returnDate){
+        long daysLate = ChronoUnit.DAYS.between(dueDate, returnDate);
+        return daysLate <= 0 ? 0.0 : member.calcLateFee(daysLate);
     }
 
-    //Adds a book to the library collections (Yet to be implemented)
+    //Adds a book to the library collections, rejecting a duplicate book ID
     public void addBook(Book book){
-        books.add(book);
+        catalogLock.writeLock().lock();
+        try {
+            if(booksById.containsKey(book.getId())){
+                throw new IllegalStateException("Book with ID " + book.getId() + " already exists");
+            }
+            book.internStrings(dictionary);
+            booksById.put(book.getId(), book);
+            long version = versions.beginCommit(() -> books.add(book));
+            try {
+                versions.availabilityChanged(book, book.getAvailableCopies(), version);
+            } finally {
+                endCommit(version);
+            }
+            dirtyBooks.add(book);
+            tokenIndex.add(book);
+            trigramIndex.add(book);
+            int ordinal = columns.add(book);
+            ordinalsById.put(book.getId(), ordinal);
+            orderIndex.add(book, ordinal);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
     }
-    //Adds a member to the library collections (Yet to be implemented)
+    //Adds a member to the library collections, rejecting a duplicate member ID (case-insensitive)
     public void addMember(Member member){
-        members.add(member);
+        catalogLock.writeLock().lock();
+        try {
+            //journal records and CSV rows are one line each
+            if(member.getMemID().indexOf('\n') >= 0 || member.getMemID().indexOf('\r') >= 0){
+                throw new IllegalArgumentException("Member ID must not contain line breaks");
+            }
+            String key = memberKey(member.getMemID());
+            if(membersById.containsKey(key)){
+                throw new IllegalStateException("Member with ID " + member.getMemID() + " already exists");
+            }
+            member.internStrings(dictionary);
+            membersById.put(key, member);
+            long version = versions.beginCommit(() -> members.add(member));
+            endCommit(version);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
     }
 
 
-    //shows a copy of the book list
+    //Opens a point-in-time view across books, members and loans, close it when done (try-with-resources)
+    //Takes no lock and never waits for writers, borrows/returns committed after it opened don't show up in it
+    public ReadTransaction beginRead(){
+        VersionManager.Published at = versions.openRead();
+        return new ReadTransaction(versions, at);
+    }
+
+    //Read-only snapshot of the book list, O(1) and never blocked by writers
+    //Books added later don't show up in it, copy counts on the Book objects are still live
     public List<Book> getBooks(){
-        return new ArrayList<>(books);
+        return books.snapshot();
     }
 
-    //To view All loans by system/Admin
+    //To view All loans by system/Admin, a read-only snapshot like getBooks (returned flags stay live)
     public List<Loan> getLoans(){
-        return new ArrayList<>(loans);
+        return loans.snapshot();
     }
 
     //To view active loans for members
     public List<Loan> getActiveLoansMember(Member member) {
-        List<Loan> result = new ArrayList<>();
-        for (Loan loan : loans){
-            if(!loan.isReturned() && loan.getMember().equals(member)){
-                result.add(loan);
-            }
+        ReentrantLock lock = stripes[stripeFor(member)];
+        lock.lock();
+        try {
+            List<Loan> active = activeLoansByMember.get(member);
+            return active == null ? new ArrayList<>() : new ArrayList<>(active);
+        } finally {
+            lock.unlock();
         }
-        return result;
     }
 
-    //To view full loan history for members(active and returned) (Not Yet implemented)
-    /*public List<Loan> getLoanHistory(Member member) {
-        List<Loan> result = new ArrayList<>();
+    //Full loan history of a member: returned loans in the order they were recorded (loaded ones in file order,
+    //then returns as they happened) followed by the open ones
+    public List<Loan> getLoanHistory(Member member){
+        return getLoanHistory(member, 0, Integer.MAX_VALUE);
+    }
 
-        for (Loan loan : loans) {
-            if (loan.getMember().equals(member)) {
-                result.add(loan);
+    //One page of getLoanHistory, only the returned loans on the page are read from the history
+    //The returned loans are copies read back from the history, the open ones are the live Loan objects
+    public List<Loan> getLoanHistory(Member member, int from, int count){
+        //the member's stripe keeps its returns from moving a loan out of the open list meanwhile, the history's
+        //monitor keeps a flush from adding records between the count and the page
+        ReentrantLock lock = stripes[stripeFor(member)];
+        lock.lock();
+        try {
+            synchronized (history){
+                int returned = history.countForMember(member);
+                List<Loan> page = history.forMember(member, from, count);
+                if (page.size() < count){
+                    List<Loan> open = getActiveLoansMember(member);
+                    int skip = Math.max(0, from - returned);
+                    for (int i = skip; i < open.size() && page.size() < count; i++){
+                        page.add(open.get(i));
+                    }
+                }
+                return page;
             }
+        } finally {
+            lock.unlock();
         }
-        return result;
-    }*/
+    }
+
+    //Open loans that are overdue on a date (due before it), most overdue first, without scanning the loans
+    public List<Loan> getOverdueLoans(LocalDate asOf){
+        return overdueIndex.overdueAsOf(asOf);
+    }
+
+    //Open loans due from a date up to days later (both included), earliest first
+    public List<Loan> getLoansDueWithin(LocalDate from, int days){
+        return overdueIndex.dueWithin(from, days);
+    }
+
+    //Registers a listener told once about each loan that goes overdue, see advanceDate
+    public void addOverdueListener(OverdueIndex.Listener listener){
+        overdueIndex.addListener(listener);
+    }
+
+    //Moves the overdue clock to today (e.g. from a nightly job) and announces the loans that went overdue since the last call
+    public int advanceDate(LocalDate today){
+        return overdueIndex.advanceTo(today);
+    }
+
+    //Lifetime late fees charged to a member on returned loans (loaded history included, payments are not tracked), O(1)
+    public double getFeeBalance(Member member){
+        return feeLedger.getBalance(member);
+    }
+
+    //Lifetime balance plus fees accrued on the member's open overdue loans as of the last assessFees
+    public double getOutstandingFees(Member member){
+        return feeLedger.getOutstanding(member);
+    }
+
+    //Nightly job: recomputes the fees accrued on every open overdue loan in parallel, returns the total
+    //Only the overdue loans are visited (from the due-date index), not the whole loan list
+    public double assessFees(LocalDate asOf){
+        return feeLedger.assess(overdueIndex.overdueAsOf(asOf), asOf) / 100.0;
+    }
+
+    //Returned loans of a book in the order they were recorded, skipping the first from
+    public List<Loan> getBookLoanHistory(Book book, int from, int count){
+        return history.forBook(book, from, count);
+    }
 
     //Searches books using the searchable.matches() rule
+    //The keyword is compiled once, candidates come from the trigram index and are confirmed with matches(), so results are the same as checking every book
     public List<Book> searchBooks(String keyword){
+        SearchQuery query = SearchQuery.compile(keyword);
+        List<Book> results = new ArrayList<>();
+        catalogLock.readLock().lock();
+        try {
+            for (int ordinal : trigramIndex.candidates(query)){
+                Book book = books.get(ordinal);
+                if (book.matches(query)){
+                    results.add(book);
+                }
+            }
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+        return results;
+
+    }
+
+    //Whole-word search through the word index, a book matches if every word of the query appears in its title, author or category
+    //Use searchBooks for the substring matching the CLI search does
+    public List<Book> searchBooksByWords(String query){
         List<Book> results = new ArrayList<>();
-        for (Book book : books){
-            if (book.matches(keyword)){
-                results.add(book);
+        catalogLock.readLock().lock();
+        try {
+            for (int ordinal : tokenIndex.search(query)){
+                results.add(books.get(ordinal));
             }
+        } finally {
+            catalogLock.readLock().unlock();
         }
         return results;
+    }
+
+    //Number of books in the library
+    public int getBookCount(){
+        return booksById.size();
+    }
+
+    //A page of books in a browse order, read from the ready-made order so nothing is sorted
+    //Equal keys keep the order the books were added in
+    public List<Book> getBooksSorted(BookSort sort, int from, int count){
+        return orderIndex.range(sort, from, count);
+    }
+
+    //Keyset paging: the next page of books after the last key the caller saw (null for the first page)
+    //Costs O(log n + limit) whatever page it is, and rows don't shift between pages when others borrow/return,
+    //a page starts right after the last row shown even if books before it moved
+    public BookOrderIndex.Page getBooksAfter(BookSort sort, BookOrderIndex.Key lastSeen, int limit){
+        return orderIndex.pageAfter(sort, lastSeen, limit);
+    }
+
+    //Keyset paging backwards: the page right before the first key the caller saw (null for the last page)
+    public BookOrderIndex.Page getBooksBefore(BookSort sort, BookOrderIndex.Key firstSeen, int limit){
+        return orderIndex.pageBefore(sort, firstSeen, limit);
+    }
 
+    //Books in a category that have a copy available, in the order they were added
+    //Scans the category and availability columns, no Book is looked at until the result is built
+    public List<Book> getAvailableBooksInCategory(String category){
+        catalogLock.readLock().lock();
+        try {
+            return booksAt(columns.availableInCategory(category));
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    //All books sorted by a numeric column, books with equal values stay in the order they were added
+    public List<Book> getBooksSortedBy(ColumnarCatalog.Column column, boolean descending){
+        catalogLock.readLock().lock();
+        try {
+            return booksAt(columns.sortedBy(column, descending));
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    //Turns column ordinals back into books, caller holds the catalog read lock
+    private List<Book> booksAt(int[] ordinals){
+        List<Book> results = new ArrayList<>(ordinals.length);
+        for (int ordinal : ordinals){
+            results.add(books.get(ordinal));
+        }
+        return results;
     }
 
     //Loading from Csv
 
     public void loadFromCsv(String booksPath, String membersPath, String loansPath) throws IOException {
-        this.books.addAll(CsvLoader.loadBooks(booksPath));
-        this.members.addAll(CsvLoader.loadMembers(membersPath));
-        this.loans.addAll(CsvLoader.loadLoans(loansPath, this.books, this.members));
+        //finishes an interrupted background merge so no delta segment is applied twice
+        CsvSaver.recoverMerge(booksPath, loansPath);
+        this.membersPath = membersPath;
+
+        //the files are parsed in parallel (see ByteCsvLoader), then added here in file order
+        install(ByteCsvLoader.loadLibrary(booksPath, membersPath, loansPath, Integer.MAX_VALUE, dictionary, returnedSink()));
+    }
+
+    //Loads from the binary snapshot plus the delta segments checkpointed after it, as long as the files it was made
+    //from are unchanged, otherwise from the CSV files
+    //After a CSV load the snapshot is rewritten, so the next start can use it (see getSnapshotFailure if that failed)
+    //When archiving, returned loans stream into the history instead of being held, and the snapshot is rewritten in the background
+    public void loadFromSnapshotOrCsv(String snapshotPath, String booksPath, String membersPath, String loansPath) throws IOException {
+        CsvSaver.recoverMerge(booksPath, loansPath);
+        this.membersPath = membersPath;
+        this.snapshotPath = snapshotPath;
+
+        if (LibrarySnapshot.isCurrent(snapshotPath, booksPath, membersPath, loansPath)){
+            int deltaSeq = LibrarySnapshot.deltaSeq(snapshotPath);
+            install(ByteCsvLoader.applyDeltas(LibrarySnapshot.read(snapshotPath, returnedSink()), booksPath, loansPath, deltaSeq, dictionary));
+            //new segments must number after the snapshot's, or they would count as part of it and make it stale
+            if (deltaSeq != Integer.MAX_VALUE) lastDeltaSeq = Math.max(lastDeltaSeq, deltaSeq);
+            return;
+        }
+
+        int deltaSeq = LibrarySnapshot.latestDeltaSeq(booksPath, loansPath);
+        ByteCsvLoader.Library library = ByteCsvLoader.loadLibrary(booksPath, membersPath, loansPath, deltaSeq, dictionary, returnedSink());
+        install(library);
+        if (archiveReturned){
+            //the loaded rows lack the returned loans that went to the history, the snapshot is made from the files instead
+            scheduleSnapshot(booksPath, membersPath, loansPath, deltaSeq);
+        } else {
+            writeSnapshot(library, LibrarySnapshot.sourceStamp(booksPath, membersPath, loansPath, deltaSeq), deltaSeq);
+        }
+    }
+
+    //Writes the snapshot, a failure is only recorded: the CSV files stay the source of truth and the next start reads them again
+    private void writeSnapshot(ByteCsvLoader.Library library, long stamp, int deltaSeq){
+        try {
+            LibrarySnapshot.write(snapshotPath, library, stamp, deltaSeq);
+            snapshotFailure = null;
+        } catch (IOException e){
+            snapshotFailure = e;
+        }
+    }
+
+    //Makes a new snapshot from the base files and the delta segments up to deltaSeq
+    private void rebuildSnapshot(String booksPath, String membersPath, String loansPath, int deltaSeq){
+        try {
+            long stamp = LibrarySnapshot.sourceStamp(booksPath, membersPath, loansPath, deltaSeq);
+            writeSnapshot(ByteCsvLoader.loadLibrary(booksPath, membersPath, loansPath, deltaSeq), stamp, deltaSeq);
+        } catch (IOException e){
+            snapshotFailure = e;
+        }
+    }
+
+    //Error of the last snapshot write, null if it succeeded (or none was written yet)
+    public Exception getSnapshotFailure(){
+        return snapshotFailure;
+    }
+
+    //Same as loadFromSnapshotOrCsv, then replays the journal on top and journals every later borrow/return
+    public void loadFromSnapshotOrCsv(String snapshotPath, String booksPath, String membersPath, String loansPath, LoanJournal journal) throws IOException {
+        journal.recover();
+        loadFromSnapshotOrCsv(snapshotPath, booksPath, membersPath, loansPath);
+        journal.replay(this);
+        this.journal = journal;
+    }
+
+    //Adds loaded rows, going through addBook/addMember so the ID indexes are built and duplicate IDs are rejected
+    private void install(ByteCsvLoader.Library library){
+        for (Book book : library.books()){
+            addBook(book);
+        }
+        for (Member member : library.members()){
+            addMember(member);
+        }
+        for (Loan loan : library.loans()){
+            recordLoan(loan);
+        }
+        history.flush();
+        //everything loaded is already on disk
+        dirtyBooks.clear();
+        dirtyLoans.clear();
+    }
+
+    //Loads the last CSV checkpoint, replays the journal on top of it and then journals every later borrow/return
+    public void loadFromCsv(String booksPath, String membersPath, String loansPath, LoanJournal journal) throws IOException {
+        journal.recover();
+        loadFromCsv(booksPath, membersPath, loansPath);
+        journal.replay(this);
+        this.journal = journal;
+    }
+
+    //Writes the books and loans changed since the last checkpoint as new delta segments, then empties the journal
+    //Cost depends on how much changed, not on the size of the library
+    public void checkpoint(String booksPath, String loansPath) throws IOException {
+        checkpointLock.writeLock().lock();
+        try {
+            List<Book> changedBooks = new ArrayList<>(dirtyBooks);
+            List<Loan> changedLoans = new ArrayList<>(dirtyLoans);
+
+            int seq = lastDeltaSeq + 1;
+            for (int existing : CsvSaver.deltaSeqs(booksPath)) seq = Math.max(seq, existing + 1);
+            for (int existing : CsvSaver.deltaSeqs(loansPath)) seq = Math.max(seq, existing + 1);
+
+            List<String> files = new ArrayList<>();
+            if (!changedBooks.isEmpty()){
+                String file = CsvSaver.deltaPath(booksPath, seq);
+                CsvSaver.saveBooks(file + ".tmp", changedBooks);
+                files.add(file);
+            }
+            if (!changedLoans.isEmpty()){
+                String file = CsvSaver.deltaPath(loansPath, seq);
+                CsvSaver.saveLoans(file + ".tmp", changedLoans);
+                files.add(file);
+            }
+
+            if (journal != null){
+                journal.checkpoint(files);
+            } else {
+                CsvSaver.installTmp(files);
+            }
+            //only cleared once the segments are installed, a failed checkpoint keeps the rows dirty
+            dirtyBooks.clear();
+            dirtyLoans.clear();
+            lastDeltaSeq = seq;
+
+            history.flush();
+            if (archiveReturned){
+                archiveReturnedLoans();
+            }
+
+            if (CsvSaver.deltaSeqs(loansPath).size() >= MERGE_AFTER_DELTAS){
+                scheduleMerge(booksPath, loansPath, seq);
+            }
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    //Error of the last background merge of the CSV deltas, null if it succeeded (or none ran yet)
+    public Exception getMergeFailure(){
+        return mergeFailure;
+    }
+
+    //Replaces the loans list with one holding only the open loans, the returned ones are already in the history
+    //The swap is the commit's append, so no commit takes a version between the copy and the swap, transactions opened before keep the old list
+    private void archiveReturnedLoans(){
+        long version = versions.beginCommit(() -> {
+            VersionedList<Loan> open = new VersionedList<>();
+            for (Loan loan : loans.snapshot()){
+                if (!loan.isReturned()) open.add(loan);
+            }
+            loans = open;
+        });
+        endCommit(version);
+    }
+
+    //Folds the delta segments up to upTo (the checkpoint that asked for it) into new base files on a background thread
+    //The new bases are built without any lock, installing them and deleting the merged segments holds the checkpoint
+    //write lock so it can't land between two segments of a checkpoint being installed
+    private synchronized void scheduleMerge(String booksPath, String loansPath, int upTo){
+        if (membersPath == null || !mergeQueued.compareAndSet(false, true)) return;
+        String members = membersPath;
+        background().submit(() -> {
+            try {
+                CsvSaver.prepareMerge(booksPath, members, loansPath, upTo);
+                checkpointLock.writeLock().lock();
+                try {
+                    CsvSaver.finishMerge(booksPath, loansPath);
+                } finally {
+                    checkpointLock.writeLock().unlock();
+                }
+                mergeFailure = null;
+                //the merge replaced the base files the snapshot was stamped with, make a new one from them
+                if (snapshotPath != null){
+                    rebuildSnapshot(booksPath, members, loansPath, upTo);
+                }
+            } catch (IOException | RuntimeException e){
+                //the deltas stay in place and are still applied on load, the next checkpoint tries again
+                mergeFailure = e;
+            } finally {
+                mergeQueued.set(false);
+            }
+        });
+    }
+
+    //Makes a new snapshot from the files on the background thread, after any merge already queued there
+    private void scheduleSnapshot(String booksPath, String membersPath, String loansPath, int deltaSeq){
+        background().submit(() -> rebuildSnapshot(booksPath, membersPath, loansPath, deltaSeq));
+    }
+
+    //Single daemon thread for the merges and snapshot rebuilds, so they never run at the same time
+    private synchronized ExecutorService background(){
+        if (mergeExecutor == null){
+            mergeExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "csv-delta-merge");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return mergeExecutor;
     }
 }
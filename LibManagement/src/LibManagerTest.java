@@ -1,10 +1,25 @@
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class LibManagerTest {
 
+    @TempDir
+    Path tempDir;
+
 
     //Tests if borrowing succeeds when member and book are registered, limit (max books allowed) not reached and a copy is available
     @Test
@@ -121,6 +136,23 @@ public class LibManagerTest {
                 manager.borrowBook(member, book, LocalDate.now())
         );
     }
+    //Testing that returning with a null or unregistered member or book is refused like a borrow
+    @Test
+    void returnBook_throwsException_whenMemberOrBookNotRegistered() {
+        LibManager manager = new LibManager();
+        Book book = new Book(1, "Test", "Author", 2023, "Cat", 1);
+        Member member = new Member("A", "M1", "a@test.com", 123, 3);
+        manager.addBook(book);
+        manager.addMember(member);
+
+        assertThrows(IllegalStateException.class, () -> manager.returnBook(null, book, LocalDate.now()));
+        assertThrows(IllegalStateException.class, () -> manager.returnBook(member, null, LocalDate.now()));
+        assertThrows(IllegalStateException.class,
+                () -> manager.returnBook(new Member("B", "M2", "b@test.com", 124, 3), book, LocalDate.now()));
+        assertThrows(IllegalStateException.class,
+                () -> manager.returnBook(member, new Book(1, "Other", "Author", 2023, "Cat", 1), LocalDate.now()));
+    }
+
     //Testing return fee when late
     @Test
     void returnBook_returnsLateFee_whenLate() {
@@ -157,4 +189,420 @@ public class LibManagerTest {
 
         assertEquals(5.0, fee, 0.0001); // 2 * 2.5
     }
+
+    //Testing the ID lookups, member IDs are matched case-insensitively
+    @Test
+    void findById_usesIndexes_andIgnoresMemberIdCase() {
+        LibManager manager = new LibManager();
+        Book book = new Book(42, "Test", "Author", 2023, "Cat", 1);
+        Member member = new Member("A", "M7", "a@test.com", 123);
+
+        manager.addBook(book);
+        manager.addMember(member);
+
+        assertEquals(book, manager.findBookById(42));
+        assertNull(manager.findBookById(43));
+        assertEquals(member, manager.findMemberById("m7"));
+        assertNull(manager.findMemberById("M8"));
+    }
+
+    //Testing that duplicate book and member IDs are rejected when added
+    @Test
+    void add_throwsException_whenIdAlreadyExists() {
+        LibManager manager = new LibManager();
+        manager.addBook(new Book(1, "B1", "A", 2023, "Cat", 1));
+        manager.addMember(new Member("A", "M1", "a@test.com", 123));
+
+        assertThrows(IllegalStateException.class, () ->
+                manager.addBook(new Book(1, "B2", "A", 2023, "Cat", 1))
+        );
+        assertThrows(IllegalStateException.class, () ->
+                manager.addMember(new Member("B", "m1", "b@test.com", 456))
+        );
+        assertEquals(1, manager.getBooks().size());
+    }
+
+    //Testing that a returned loan frees the slot so the member can borrow up to the limit again
+    @Test
+    void borrowBook_allowsBorrowAgain_afterReturnFreesLimit() {
+        LibManager manager = new LibManager();
+        Book book1 = new Book(1, "B1", "A", 2023, "Cat", 1);
+        Book book2 = new Book(2, "B2", "A", 2023, "Cat", 1);
+        Book book3 = new Book(3, "B3", "A", 2023, "Cat", 1);
+        Member member = new Member("A", "M1", "a@test.com", 123);
+
+        manager.addMember(member);
+        manager.addBook(book1);
+        manager.addBook(book2);
+        manager.addBook(book3);
+
+        manager.borrowBook(member, book1, LocalDate.now());
+        manager.borrowBook(member, book2, LocalDate.now());
+        manager.returnBook(member, book1, LocalDate.now());
+
+        assertTrue(manager.borrowBook(member, book3, LocalDate.now()));
+        assertEquals(2, manager.getActiveLoansMember(member).size());
+        assertEquals(3, manager.getLoans().size());
+    }
+
+    //Testing whole-word search, every query word has to match a full word in title, author or category
+    @Test
+    void searchBooksByWords_matchesWholeWordsOnly() {
+        LibManager manager = new LibManager();
+        Book storm = new Book(1, "Rising Storm", "Erin Hunter", 2004, "Fantasy", 1);
+        Book ink = new Book(2, "Tintenblut", "Cornelia Funke", 2005, "Fantasy", 1);
+        Book code = new Book(3, "Clean Code", "Robert Martin", 2008, "Programming", 1);
+        manager.addBook(storm);
+        manager.addBook(ink);
+        manager.addBook(code);
+
+        assertEquals(List.of(storm, ink), manager.searchBooksByWords("fantasy"));
+        assertEquals(List.of(storm), manager.searchBooksByWords("STORM hunter"));
+        assertTrue(manager.searchBooksByWords("torm").isEmpty());
+        assertTrue(manager.searchBooksByWords("storm funke").isEmpty());
+        assertTrue(manager.searchBooksByWords("  ").isEmpty());
+    }
+
+    //Testing substring search through the trigram index, it should find the same books as checking every book
+    @Test
+    void searchBooks_matchesSubstrings_likeSearchableMatches() {
+        LibManager manager = new LibManager();
+        Book storm = new Book(1, "Rising Storm", "Erin Hunter", 2004, "Fantasy", 1);
+        Book ink = new Book(2, "Tintenblut", "Cornelia Funke", 2005, "Fantasy", 1);
+        Book code = new Book(3, "Clean Code", "Robert Martin", 2008, "Programming", 1);
+        manager.addBook(storm);
+        manager.addBook(ink);
+        manager.addBook(code);
+
+        assertEquals(List.of(storm), manager.searchBooks("torm"));
+        assertEquals(List.of(storm, ink), manager.searchBooks("FANTASY"));
+        assertEquals(List.of(storm, ink), manager.searchBooks("un"));
+        assertEquals(List.of(storm, ink, code), manager.searchBooks(""));
+        assertTrue(manager.searchBooks("storm funke").isEmpty());
+        assertTrue(manager.searchBooks(null).isEmpty());
+
+        for (String keyword : new String[]{"n", "in", "tin", "inten", "ert", "code m", "xyz"}) {
+            List<Book> expected = new ArrayList<>();
+            for (Book b : manager.getBooks()) {
+                if (b.matches(keyword)) expected.add(b);
+            }
+            assertEquals(expected, manager.searchBooks(keyword));
+        }
+    }
+
+    //Stress test: many threads borrowing and returning at once should never oversell copies or go over a member's limit
+    @Test
+    void concurrentBorrowAndReturn_neverOversellsOrExceedsLimit() throws Exception {
+        LibManager manager = new LibManager(64);
+        for (int i = 1; i <= 20; i++) {
+            manager.addBook(new Book(i, "B" + i, "A", 2023, "Cat", 3));
+        }
+        for (int i = 1; i <= 40; i++) {
+            manager.addMember(new Member("M", "M" + i, "m@test.com", i));
+        }
+
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            futures.add(pool.submit(() -> {
+                Random rng = new Random(seed);
+                start.await();
+                for (int i = 0; i < 20000; i++) {
+                    Member member = manager.findMemberById("M" + (1 + rng.nextInt(40)));
+                    Book book = manager.findBookById(1 + rng.nextInt(20));
+                    try {
+                        if (rng.nextBoolean()) {
+                            manager.borrowBook(member, book, LocalDate.now());
+                        } else {
+                            manager.returnBook(member, book, LocalDate.now());
+                        }
+                    } catch (IllegalStateException expected) {
+                        //rule violations are expected, only the final state matters
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        pool.shutdown();
+
+        Map<Book, Integer> openPerBook = new HashMap<>();
+        for (Loan loan : manager.getLoans()) {
+            if (!loan.isReturned()) openPerBook.merge(loan.getBook(), 1, Integer::sum);
+        }
+        for (Book book : manager.getBooks()) {
+            int open = openPerBook.getOrDefault(book, 0);
+            assertTrue(book.getAvailableCopies() >= 0);
+            assertEquals(book.getTotalCopies(), book.getAvailableCopies() + open);
+        }
+        for (int i = 1; i <= 40; i++) {
+            Member member = manager.findMemberById("M" + i);
+            assertTrue(manager.getActiveLoansMember(member).size() <= member.getMaxBooksAllowed());
+        }
+    }
+
+    //Testing the column filters follow borrows and returns
+    @Test
+    void availableInCategory_followsBorrowAndReturn() {
+        LibManager manager = new LibManager();
+        Book dune = new Book(1, "Dune", "Frank Herbert", 1965, "SciFi", 1);
+        Book emma = new Book(2, "Emma", "Jane Austen", 1815, "Classic", 2);
+        Book solaris = new Book(3, "Solaris", "Stanislaw Lem", 1961, "SciFi", 2);
+        Member member = new Member("A", "M1", "a@test.com", 123);
+        manager.addBook(dune);
+        manager.addBook(emma);
+        manager.addBook(solaris);
+        manager.addMember(member);
+
+        assertEquals(List.of(dune, solaris), manager.getAvailableBooksInCategory("SciFi"));
+
+        manager.borrowBook(member, dune, LocalDate.of(2025, 1, 1));
+        assertEquals(List.of(solaris), manager.getAvailableBooksInCategory("SciFi"));
+        assertTrue(manager.getAvailableBooksInCategory("Poetry").isEmpty());
+
+        manager.returnBook(member, dune, LocalDate.of(2025, 1, 5));
+        assertEquals(List.of(dune, solaris), manager.getAvailableBooksInCategory("SciFi"));
+    }
+
+    //Testing the column sorts give the same order as a stable sort of the book list
+    @Test
+    void sortedByColumn_matchesStableListSort() {
+        LibManager manager = new LibManager();
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            int total = 1 + random.nextInt(4);
+            manager.addBook(new Book(1000 - i * 3, "T" + i, "A", 1900 + random.nextInt(50), "Cat", total, random.nextInt(total + 1)));
+        }
+
+        List<Book> byAvailability = new ArrayList<>(manager.getBooks());
+        byAvailability.sort((a, b) -> Integer.compare(b.getAvailableCopies(), a.getAvailableCopies()));
+        assertEquals(byAvailability, manager.getBooksSortedBy(ColumnarCatalog.Column.AVAILABLE_COPIES, true));
+
+        List<Book> byYear = new ArrayList<>(manager.getBooks());
+        byYear.sort((a, b) -> Integer.compare(a.getYear(), b.getYear()));
+        assertEquals(byYear, manager.getBooksSortedBy(ColumnarCatalog.Column.YEAR, false));
+
+        List<Book> byId = new ArrayList<>(manager.getBooks());
+        byId.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+        assertEquals(byId, manager.getBooksSortedBy(ColumnarCatalog.Column.ID, false));
+    }
+
+    //Testing that repeated author/category/department values end up as one shared instance within a library
+    @Test
+    void addBookAndMember_shareRepeatedStrings() {
+        LibManager manager = new LibManager();
+        Book first = new Book(1, "Emma", new String("Jane Austen"), 1815, new String("Classic"), 1);
+        Book second = new Book(2, "Persuasion", new String("Jane Austen"), 1817, new String("Classic"), 1);
+        Member a = new StudentMember("A", "S1", "a@test.com", 1, "100", new String("CS"));
+        Member b = new StudentMember("B", "S2", "b@test.com", 2, "200", new String("CS"));
+        manager.addBook(first);
+        manager.addBook(second);
+        manager.addMember(a);
+        manager.addMember(b);
+
+        assertSame(first.getAuthor(), second.getAuthor());
+        assertSame(first.getCategory(), second.getCategory());
+        assertSame(first.getSearchAuthor(), second.getSearchAuthor());
+        assertSame(((StudentMember) a).getDepartment(), ((StudentMember) b).getDepartment());
+
+        //each library keeps its own dictionary, nothing is shared through global state
+        LibManager other = new LibManager();
+        Book third = new Book(3, "Emma", new String("Jane Austen"), 1815, new String("Classic"), 1);
+        other.addBook(third);
+        assertNotSame(first.getAuthor(), third.getAuthor());
+    }
+
+    //Testing the kept-sorted browse orders match a stable sort with the CLI's old comparators, also after borrows and returns
+    @Test
+    void getBooksSorted_matchesStableSort_afterBorrowAndReturn() {
+        LibManager manager = new LibManager();
+        Random random = new Random(11);
+        String[] words = {"storm", "Storm", "ink", "İnk", "çay", "Zebra", "apple", "Apple"};
+        for (int i = 0; i < 200; i++) {
+            manager.addBook(new Book(500 - i, words[random.nextInt(words.length)] + " " + random.nextInt(5),
+                    words[random.nextInt(words.length)], 2000, words[random.nextInt(words.length)], 1 + random.nextInt(3)));
+        }
+        Member member = new Member("A", "M1", "a@test.com", 1, 50);
+        manager.addMember(member);
+        List<Book> all = manager.getBooks();
+        for (int i = 0; i < 30; i++) {
+            manager.borrowBook(member, all.get(i * 5), LocalDate.of(2025, 1, 1));
+        }
+        for (int i = 0; i < 10; i++) {
+            manager.returnBook(member, all.get(i * 10), LocalDate.of(2025, 1, 3));
+        }
+
+        Map<BookSort, Comparator<Book>> comparators = new HashMap<>();
+        comparators.put(BookSort.TITLE, (a, b) -> a.getTitle().compareToIgnoreCase(b.getTitle()));
+        comparators.put(BookSort.AUTHOR, (a, b) -> a.getAuthor().compareToIgnoreCase(b.getAuthor()));
+        comparators.put(BookSort.CATEGORY, (a, b) -> a.getCategory().compareToIgnoreCase(b.getCategory()));
+        comparators.put(BookSort.AVAILABILITY, (a, b) -> Integer.compare(b.getAvailableCopies(), a.getAvailableCopies()));
+        comparators.put(BookSort.ID, (a, b) -> Integer.compare(a.getId(), b.getId()));
+
+        for (BookSort sort : BookSort.values()) {
+            List<Book> expected = new ArrayList<>(all);
+            expected.sort(comparators.get(sort));
+            assertEquals(expected, manager.getBooksSorted(sort, 0, 1000), sort.name());
+            assertEquals(expected.subList(25, 50), manager.getBooksSorted(sort, 25, 25), sort.name());
+        }
+    }
+
+    //Testing keyset paging: the next page starts after the last key shown, even when a book is added before it
+    @Test
+    void getBooksAfter_continuesFromLastKey_whenBooksAreAddedBeforeIt() {
+        LibManager manager = new LibManager();
+        for (int i = 0; i < 30; i++) {
+            manager.addBook(new Book(100 + i, "Title " + i, "Author", 2000, "Fiction", 2));
+        }
+
+        BookOrderIndex.Page first = manager.getBooksAfter(BookSort.ID, null, 10);
+        assertEquals(100, first.books().get(0).getId());
+        assertEquals(109, first.books().get(9).getId());
+
+        //a book that sorts before the page shown would push every offset page down by one row
+        manager.addBook(new Book(1, "Early", "Author", 2000, "Fiction", 2));
+        BookOrderIndex.Page second = manager.getBooksAfter(BookSort.ID, first.last(), 10);
+        assertEquals(110, second.books().get(0).getId());
+        assertEquals(119, second.books().get(9).getId());
+
+        BookOrderIndex.Page back = manager.getBooksBefore(BookSort.ID, second.first(), 10);
+        assertEquals(first.books(), back.books());
+
+        BookOrderIndex.Page last = manager.getBooksAfter(BookSort.ID,
+                manager.getBooksAfter(BookSort.ID, second.last(), 10).last(), 10);
+        assertTrue(last.books().isEmpty());
+        assertNull(last.last());
+    }
+
+    //Testing that a read transaction keeps seeing the version it opened at while borrows, returns and new books commit
+    @Test
+    void beginRead_seesOneVersion_whileBorrowsAndReturnsCommit() {
+        LibManager manager = new LibManager();
+        Book book = new Book(1, "Dune", "Herbert", 1965, "SciFi", 2);
+        Member member = new Member("A", "M1", "a@test.com", 1, 5);
+        manager.addBook(book);
+        manager.addMember(member);
+        manager.borrowBook(member, book, LocalDate.of(2025, 1, 1));
+
+        try (ReadTransaction read = manager.beginRead()) {
+            manager.returnBook(member, book, LocalDate.of(2025, 1, 2));
+            manager.addBook(new Book(2, "Emma", "Austen", 1815, "Classic", 1));
+            manager.borrowBook(member, book, LocalDate.of(2025, 1, 3));
+
+            assertEquals(1, read.getBooks().size());
+            assertEquals(1, read.getLoans().size());
+            assertEquals(1, read.getActiveLoans().size());
+            assertFalse(read.isReturned(read.getLoans().get(0)));
+            assertEquals(1, read.getAvailableCopies(book));
+        }
+
+        try (ReadTransaction read = manager.beginRead()) {
+            assertEquals(2, read.getBooks().size());
+            assertEquals(2, read.getLoans().size());
+            assertTrue(read.isReturned(read.getLoans().get(0)));
+            assertEquals(1, read.getActiveLoans().size());
+            assertEquals(1, read.getAvailableCopies(book));
+        }
+    }
+
+    //Stress test: every read transaction sees lent copies and open loans from the same version while threads borrow and return
+    @Test
+    void beginRead_availabilityMatchesOpenLoans_underConcurrentCheckouts() throws Exception {
+        LibManager manager = new LibManager(16);
+        for (int i = 0; i < 20; i++) {
+            manager.addBook(new Book(i, "T" + i, "A", 2000, "C", 3));
+        }
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Member member = new Member("M" + i, "M" + i, "m@test.com", 1, 100);
+            manager.addMember(member);
+            members.add(member);
+        }
+        List<Book> books = manager.getBooks();
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> writers = new ArrayList<>();
+        for (Member member : members) {
+            writers.add(pool.submit(() -> {
+                for (int round = 0; round < 200; round++) {
+                    Book book = books.get(round % books.size());
+                    try {
+                        manager.borrowBook(member, book, LocalDate.of(2025, 1, 1));
+                        manager.returnBook(member, book, LocalDate.of(2025, 1, 2));
+                    } catch (IllegalStateException noCopyLeft) {
+                        //another member holds every copy right now
+                    }
+                }
+            }));
+        }
+        while (!writers.stream().allMatch(Future::isDone)) {
+            try (ReadTransaction read = manager.beginRead()) {
+                int lent = 0;
+                for (Book book : read.getBooks()) {
+                    lent += book.getTotalCopies() - read.getAvailableCopies(book);
+                }
+                assertEquals(read.getActiveLoans().size(), lent);
+            }
+        }
+        for (Future<?> writer : writers) writer.get();
+        pool.shutdown();
+    }
+
+    //Testing that a member's history lists the returned loans first and then the open ones, also by page
+    @Test
+    void getLoanHistory_listsReturnedThenOpenLoans() {
+        LibManager manager = new LibManager();
+        Book dune = new Book(1, "Dune", "Herbert", 1965, "SciFi", 2);
+        Book emma = new Book(2, "Emma", "Austen", 1815, "Classic", 2);
+        Member member = new Member("A", "M1", "a@test.com", 1, 5);
+        manager.addBook(dune);
+        manager.addBook(emma);
+        manager.addMember(member);
+
+        manager.borrowBook(member, dune, LocalDate.of(2025, 1, 1));
+        manager.returnBook(member, dune, LocalDate.of(2025, 1, 5));
+        manager.borrowBook(member, emma, LocalDate.of(2025, 1, 6));
+        manager.borrowBook(member, dune, LocalDate.of(2025, 1, 7));
+
+        List<Loan> history = manager.getLoanHistory(member);
+        assertEquals(3, history.size());
+        assertTrue(history.get(0).isReturned());
+        assertEquals(LocalDate.of(2025, 1, 5), history.get(0).getReturnDate());
+        assertSame(emma, history.get(1).getBook());
+        assertEquals(List.of(history.get(2)), manager.getLoanHistory(member, 2, 5));
+        assertEquals(1, manager.getBookLoanHistory(dune, 0, 10).size());
+    }
+
+    //Testing that an archiving checkpoint moves returned loans out of the loan list into the history, readers opened before keep them
+    @Test
+    void checkpoint_movesReturnedLoansToHistory_whenArchiving() throws Exception {
+        try (LoanHistory history = new LoanHistory(tempDir.resolve("loans.history").toString())) {
+            LibManager manager = new LibManager(4, history);
+            Book book = new Book(1, "Dune", "Herbert", 1965, "SciFi", 2);
+            Member member = new Member("A", "M1", "a@test.com", 1, 5);
+            manager.addBook(book);
+            manager.addMember(member);
+            manager.borrowBook(member, book, LocalDate.of(2025, 1, 1));
+            manager.returnBook(member, book, LocalDate.of(2025, 1, 2));
+            manager.borrowBook(member, book, LocalDate.of(2025, 1, 3));
+
+            try (ReadTransaction before = manager.beginRead()) {
+                manager.checkpoint(tempDir.resolve("books.csv").toString(), tempDir.resolve("loans.csv").toString());
+
+                assertEquals(2, before.getLoans().size());
+                assertEquals(1, manager.getLoans().size());
+                assertFalse(manager.getLoans().get(0).isReturned());
+                assertEquals(2, manager.getLoanHistory(member).size());
+                assertEquals(1, history.size());
+            }
+            manager.returnBook(member, book, LocalDate.of(2025, 1, 4));
+            assertEquals(2, manager.getBookLoanHistory(book, 0, 10).size());
+        }
+    }
 }
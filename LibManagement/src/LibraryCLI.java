@@ -1,5 +1,7 @@
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Scanner;
 import java.time.LocalDate;
@@ -10,6 +12,10 @@ public class LibraryCLI {
     private final LibManager manager;
     private final Scanner scanner = new Scanner(System.in);
 
+    //borrows/returns are journaled as they happen, the CSV files are only rewritten every few operations and on quit
+    private static final int CHECKPOINT_EVERY = 50;
+    private int changesSinceCheckpoint = 0;
+
 
     //Construct stores manager and file paths for saving
     public LibraryCLI(LibManager manager, String booksPath, String loansPaths) {
@@ -39,16 +45,18 @@ public class LibraryCLI {
                 case "3" -> viewActiveLoansFlow();
                 case "4" -> borrowBookFlow();
                 case "5" -> returnBookFlow();
-                case "6" -> {return;}
+                case "6" -> {
+                    saveCheckpoint();
+                    return;
+                }
                 default -> System.out.println("Invalid choice.");
             }
         }
     }
 
     private void browseBooksFlow(){
-        List<Book> results = new ArrayList<>(manager.getBooks());
-
-        if(results.isEmpty()){
+        int totalBooks = manager.getBookCount();
+        if(totalBooks == 0){
             System.out.println("Library is Empty");
             return;
         }
@@ -58,33 +66,33 @@ public class LibraryCLI {
         System.out.print("Choice: ");
         String sortChoice = scanner.nextLine().trim();
 
+        //every order is kept sorted by the manager, browsing only reads the page it shows
+        BookSort sort;
         switch (sortChoice) {
-            case "1" ->
-                    results.sort((a, b) -> a.getTitle().compareToIgnoreCase(b.getTitle()));
-            case "2" ->
-                    results.sort((a, b) -> a.getAuthor().compareToIgnoreCase(b.getAuthor()));
-            case "3" ->
-                    results.sort((a, b) -> a.getCategory().compareToIgnoreCase(b.getCategory()));
-            case "4" ->
-                    results.sort((a, b) -> Integer.compare(b.getAvailableCopies(), a.getAvailableCopies()));
-            case "5" ->
-                    results.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+            case "1" -> sort = BookSort.TITLE;
+            case "2" -> sort = BookSort.AUTHOR;
+            case "3" -> sort = BookSort.CATEGORY;
+            case "4" -> sort = BookSort.AVAILABILITY;
+            case "5" -> sort = BookSort.ID;
             default -> {
                 System.out.println("Invalid sort option....Defaulting to ID");
-                results.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+                sort = BookSort.ID;
             }
         }
 
         int pageSize = 25; //How many books shown per page
-        Paginator<Book> paginator = new Paginator<>(results, pageSize); //Displays all books with sorting + pagination
+        int totalPages = (totalBooks + pageSize - 1) / pageSize;
         int page = 0;
+        //pages are read by key, not by offset: each one starts right after the last row of the one before,
+        //so books borrowed/returned by others while browsing don't shift rows between pages
+        BookOrderIndex.Page current = manager.getBooksAfter(sort, null, pageSize);
 
         while (true) {
             System.out.println("\n=== Browse Library ===");
-            System.out.println("Page " + (page + 1) + "/" + paginator.totalPages()
-                    + " | total books=" + results.size());
+            System.out.println("Page " + (page + 1) + "/" + totalPages
+                    + " | total books=" + totalBooks);
 
-            for (Book b : paginator.getPage(page)) {
+            for (Book b : current.books()) {
                 System.out.println(
                         "#" + b.getId() + " | " +
                                 b.getTitle() + " | " +
@@ -97,10 +105,18 @@ public class LibraryCLI {
             System.out.println("\nCommands: [n] next  [p] prev  [b] back to menu");
             String cmd = scanner.nextLine().trim();
 
-            if (cmd.equalsIgnoreCase("n") && page < paginator.totalPages() - 1) {
-                page++;
+            if (cmd.equalsIgnoreCase("n") && current.last() != null) {
+                BookOrderIndex.Page next = manager.getBooksAfter(sort, current.last(), pageSize);
+                if (!next.books().isEmpty()) {
+                    current = next;
+                    page++;
+                }
             } else if (cmd.equalsIgnoreCase("p") && page > 0) {
-                page--;
+                BookOrderIndex.Page prev = manager.getBooksBefore(sort, current.first(), pageSize);
+                if (!prev.books().isEmpty()) {
+                    current = prev;
+                    page--;
+                }
             } else if (cmd.equalsIgnoreCase("b")) {
                 return;
             }
@@ -127,14 +143,15 @@ public class LibraryCLI {
             System.out.print("Choice: ");
             String sortChoice = scanner.nextLine().trim();
 
-            //Sorting results
+            //Sort order, the paginator only sorts as far as the pages that are actually shown
+            Comparator<Book> order = null;
             switch (sortChoice) {
                 case "1" ->
-                        results.sort((a, b) -> a.getTitle().compareToIgnoreCase(b.getTitle()));
+                        order = (a, b) -> a.getTitle().compareToIgnoreCase(b.getTitle());
                 case "2" ->
-                        results.sort((a, b) -> a.getAuthor().compareToIgnoreCase(b.getAuthor()));
+                        order = (a, b) -> a.getAuthor().compareToIgnoreCase(b.getAuthor());
                 case "3" ->
-                        results.sort((a, b) -> Integer.compare(b.getAvailableCopies(), a.getAvailableCopies()));
+                        order = (a, b) -> Integer.compare(b.getAvailableCopies(), a.getAvailableCopies());
                 default ->
                         System.out.println("Invalid sort option, Keeping original order");
             }
@@ -142,7 +159,7 @@ public class LibraryCLI {
 
             //How many books there is per page
             int pageSize = 30;
-            Paginator<Book> paginator = new Paginator<>(results, pageSize);
+            Paginator<Book> paginator = new Paginator<>(results, pageSize, order);
             int page = 0;
 
             while (true) {
@@ -240,15 +257,14 @@ public class LibraryCLI {
             System.out.println("Borrowed successfully");
             System.out.println("Due date will be: " + LocalDate.now().plusDays(14));
 
-            //Saving info to Csv file
-            CsvSaver.saveBooks(booksPath, manager.getBooks());
-            CsvSaver.saveLoans(loansPaths, manager.getLoans());
-            System.out.println("Saved to CSV");
+            //The borrow is already in the journal, the CSV files are compacted now and then
+            changedSinceCheckpoint();
 
+        } catch (UncheckedIOException ex) {
+            System.out.println("Borrowed, due date will be: " + LocalDate.now().plusDays(14));
+            notDurable(ex);
         } catch (RuntimeException ex) {
             System.out.println("Borrow failed: " + ex.getMessage());
-        }catch (IOException e){
-            System.out.println("Borrowed but failed to save to CSV: " + e.getMessage());
         }
     }
 
@@ -288,19 +304,58 @@ public class LibraryCLI {
             if( fee > 0){
                 System.out.println("Book was returned late");
                 System.out.println("Late fee amounts to: " + fee);
+                printFees(member);
             } else {
                 System.out.println("Book was returned on time");
             }
 
-            //Saving info to Csv file
-            CsvSaver.saveBooks(booksPath, manager.getBooks());
-            CsvSaver.saveLoans(loansPaths, manager.getLoans());
-            System.out.println("Saved to CSV");
+            //The return is already in the journal, the CSV files are compacted now and then
+            changedSinceCheckpoint();
 
+        }catch (UncheckedIOException ex){
+            //the fee is still charged, the totals show it
+            System.out.println("Book was returned");
+            printFees(member);
+            notDurable(ex);
         }catch (RuntimeException ex){
             System.out.println("Return failed:" + ex.getMessage());
-        } catch (IOException ex){
-            System.out.println("Returned but failed to save to CSV: " + ex.getMessage());
+        }
+    }
+
+    //Payments are not recorded, so the balance is every fee ever charged, not what is still owed
+    private void printFees(Member member){
+        System.out.println("Lifetime late fees: " + manager.getFeeBalance(member));
+        System.out.println("Lifetime late fees including books still out (last assessment): " + manager.getOutstandingFees(member));
+    }
+
+    //A borrow/return was applied but the journal could not write it, so it would be lost if the program stopped now
+    //Writing a checkpoint puts it in the CSV files instead
+    private void notDurable(UncheckedIOException ex){
+        System.out.println("Applied, but not yet durable: " + ex.getCause().getMessage());
+        saveCheckpoint();
+    }
+
+    //Counts a journaled change and writes a new CSV checkpoint every CHECKPOINT_EVERY changes
+    private void changedSinceCheckpoint(){
+        changesSinceCheckpoint++;
+        if (changesSinceCheckpoint >= CHECKPOINT_EVERY){
+            saveCheckpoint();
+        }
+    }
+
+    //Writes books/loans back to CSV and empties the journal
+    private void saveCheckpoint(){
+        try {
+            manager.checkpoint(booksPath, loansPaths);
+            changesSinceCheckpoint = 0;
+            System.out.println("Saved to CSV");
+            if (manager.getMergeFailure() != null){
+                //the deltas are still applied on load, the next checkpoint retries the merge
+                System.out.println("Merging the CSV deltas failed: " + manager.getMergeFailure().getMessage());
+            }
+        } catch (IOException e){
+            //nothing is lost, the journal still has every change since the last checkpoint
+            System.out.println("Failed to save to CSV, changes are kept in the journal: " + e.getMessage());
         }
     }
 }
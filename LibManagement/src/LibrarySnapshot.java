@@ -0,0 +1,388 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+/*
+* Binary snapshot of the whole library, loads much faster than parsing the CSV files
+* Strings are stored once in a dictionary and referenced by index, dates are epoch days,
+* and a loan points at its book and member by their position in the snapshot
+* The CSV files stay the source of truth: a snapshot records a stamp of the CSV files it was made from
+* (the base files and the delta segments up to deltaSeq) and is only used while those files are unchanged
+* Later checkpoints only add segments after deltaSeq, the loader applies those on top of the snapshot
+*
+* Layout (big-endian, version 2):
+*   int magic, int version, long sourceStamp, int deltaSeq
+*   int stringCount,  per string: int byteLength, UTF-8 bytes
+*   int bookCount,    per book:   int id, title, author, int year, category, int totalCopies, int availableCopies
+*   int memberCount,  per member: byte type (0 = REG, 1 = STU), memberId, name, email, int number, int maxBooksAllowed
+*                                  students also: stuId, department
+*   int loanCount,    per loan:   int bookIndex, int memberIndex, int loanDay, byte returned, int returnDay
+* (text fields are int string indexes, -1 = null, and a missing returnDay is NO_DATE)
+ */
+
+public class LibrarySnapshot {
+
+    private static final int MAGIC = 0x4C494253; // "LIBS"
+    public static final int VERSION = 2;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    //Writes a snapshot of the given rows, stamped with the CSV files they came from (all of their delta segments)
+    public static void write(String snapshotPath, ByteCsvLoader.Library library, long sourceStamp) throws IOException {
+        write(snapshotPath, library, sourceStamp, Integer.MAX_VALUE);
+    }
+
+    //Writes a snapshot of rows made from the base files plus the delta segments up to deltaSeq
+    //Loans must point at books/members in the given lists
+    //The file is written as .tmp and moved into place, a reader never sees half a snapshot
+    public static void write(String snapshotPath, ByteCsvLoader.Library library, long sourceStamp, int deltaSeq) throws IOException {
+        //dictionary: every distinct string once, in first-seen order
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (Book b : library.books()) {
+            code(codes, strings, b.getTitle());
+            code(codes, strings, b.getAuthor());
+            code(codes, strings, b.getCategory());
+        }
+        for (Member m : library.members()) {
+            code(codes, strings, m.getMemID());
+            code(codes, strings, m.getName());
+            code(codes, strings, m.getEmail());
+            if (m instanceof StudentMember s) {
+                code(codes, strings, s.getStuID());
+                code(codes, strings, s.getDepartment());
+            }
+        }
+
+        //loans store positions instead of IDs
+        Map<Book, Integer> bookIndex = new IdentityHashMap<>();
+        for (int i = 0; i < library.books().size(); i++) bookIndex.put(library.books().get(i), i);
+        Map<Member, Integer> memberIndex = new IdentityHashMap<>();
+        for (int i = 0; i < library.members().size(); i++) memberIndex.put(library.members().get(i), i);
+
+        String tmp = snapshotPath + ".tmp";
+        try (Out out = new Out(FileChannel.open(Path.of(tmp), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(sourceStamp);
+            out.putInt(deltaSeq);
+
+            out.putInt(strings.size());
+            for (String s : strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.putInt(bytes.length);
+                out.put(bytes);
+            }
+
+            out.putInt(library.books().size());
+            for (Book b : library.books()) {
+                out.putInt(b.getId());
+                out.putInt(ref(codes, b.getTitle()));
+                out.putInt(ref(codes, b.getAuthor()));
+                out.putInt(b.getYear());
+                out.putInt(ref(codes, b.getCategory()));
+                out.putInt(b.getTotalCopies());
+                out.putInt(b.getAvailableCopies());
+            }
+
+            out.putInt(library.members().size());
+            for (Member m : library.members()) {
+                out.putByte(m instanceof StudentMember ? 1 : 0);
+                out.putInt(ref(codes, m.getMemID()));
+                out.putInt(ref(codes, m.getName()));
+                out.putInt(ref(codes, m.getEmail()));
+                out.putInt(m.getNumber());
+                out.putInt(m.getMaxBooksAllowed());
+                if (m instanceof StudentMember s) {
+                    out.putInt(ref(codes, s.getStuID()));
+                    out.putInt(ref(codes, s.getDepartment()));
+                }
+            }
+
+            out.putInt(library.loans().size());
+            for (Loan l : library.loans()) {
+                Integer book = bookIndex.get(l.getBook());
+                Integer member = memberIndex.get(l.getMember());
+                if (book == null || member == null) {
+                    throw new IllegalStateException("Loan refers to a book or member outside the snapshot, bookId=" + l.getBook().getId());
+                }
+                out.putInt(book);
+                out.putInt(member);
+                out.putInt((int) l.getLoanDate().toEpochDay());
+                out.putByte(l.isReturned() ? 1 : 0);
+                out.putInt(l.getReturnDate() == null ? NO_DATE : (int) l.getReturnDate().toEpochDay());
+            }
+            out.flush();
+            out.channel.force(true);
+        }
+        CsvSaver.installTmp(List.of(snapshotPath));
+    }
+
+    //Reads a whole snapshot back into rows
+    public static ByteCsvLoader.Library read(String snapshotPath) throws IOException {
+        return read(snapshotPath, null);
+    }
+
+    //Same, handing the returned loans to returnedSink in snapshot order instead of putting them in the result
+    public static ByteCsvLoader.Library read(String snapshotPath, Consumer<Loan> returnedSink) throws IOException {
+        try (In in = new In(FileChannel.open(Path.of(snapshotPath), StandardOpenOption.READ))) {
+            readHeader(in, snapshotPath);
+            in.getLong(); // source stamp
+            in.getInt(); // delta seq
+
+            String[] strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = new String(in.get(in.getInt()), StandardCharsets.UTF_8);
+            }
+
+            int bookCount = in.getInt();
+            List<Book> books = new ArrayList<>(bookCount);
+            for (int i = 0; i < bookCount; i++) {
+                int id = in.getInt();
+                String title = string(strings, in.getInt());
+                String author = string(strings, in.getInt());
+                int year = in.getInt();
+                String category = string(strings, in.getInt());
+                int totalCopies = in.getInt();
+                int availableCopies = in.getInt();
+                books.add(new Book(id, title, author, year, category, totalCopies, availableCopies));
+            }
+
+            int memberCount = in.getInt();
+            List<Member> members = new ArrayList<>(memberCount);
+            for (int i = 0; i < memberCount; i++) {
+                byte type = in.getByte();
+                String memberId = string(strings, in.getInt());
+                String name = string(strings, in.getInt());
+                String email = string(strings, in.getInt());
+                int number = in.getInt();
+                int maxBooksAllowed = in.getInt();
+                if (type == 0) {
+                    members.add(new Member(name, memberId, email, number, maxBooksAllowed));
+                } else if (type == 1) {
+                    members.add(new StudentMember(name, memberId, email, number, string(strings, in.getInt()), string(strings, in.getInt())));
+                } else {
+                    throw new IOException("Unknown member type " + type + " in " + snapshotPath);
+                }
+            }
+
+            int loanCount = in.getInt();
+            List<Loan> loans = new ArrayList<>(returnedSink == null ? loanCount : 0);
+            for (int i = 0; i < loanCount; i++) {
+                Book book = books.get(in.getInt());
+                Member member = members.get(in.getInt());
+                Loan loan = new Loan(book, member, LocalDate.ofEpochDay(in.getInt()));
+                boolean returned = in.getByte() == 1;
+                int returnDay = in.getInt();
+                if (returned) {
+                    loan.loadAsReturned(returnDay == NO_DATE ? null : LocalDate.ofEpochDay(returnDay));
+                    if (returnedSink != null) {
+                        returnedSink.accept(loan);
+                        continue;
+                    }
+                }
+                loans.add(loan);
+            }
+            return new ByteCsvLoader.Library(books, members, loans);
+        }
+    }
+
+    //True if the snapshot exists, has this version and was made from the CSV files as they are now
+    public static boolean isCurrent(String snapshotPath, long sourceStamp) throws IOException {
+        long[] header = header(snapshotPath);
+        return header != null && header[0] == sourceStamp;
+    }
+
+    //True if the snapshot exists, has this version and the files it was made from (base files and the delta
+    //segments up to its deltaSeq) are unchanged; segments written after it don't make it stale
+    public static boolean isCurrent(String snapshotPath, String booksPath, String membersPath, String loansPath) throws IOException {
+        long[] header = header(snapshotPath);
+        return header != null && header[0] == sourceStamp(booksPath, membersPath, loansPath, (int) header[1]);
+    }
+
+    //Highest delta segment already folded into the snapshot
+    public static int deltaSeq(String snapshotPath) throws IOException {
+        long[] header = header(snapshotPath);
+        if (header == null) throw new IOException("Not a current library snapshot: " + snapshotPath);
+        return (int) header[1];
+    }
+
+    //{sourceStamp, deltaSeq} of a snapshot, null if it is missing, of another version or cut short
+    private static long[] header(String snapshotPath) throws IOException {
+        if (!Files.exists(Path.of(snapshotPath))) return null;
+        try (In in = new In(FileChannel.open(Path.of(snapshotPath), StandardOpenOption.READ))) {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+            return new long[]{in.getLong(), in.getInt()};
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    //Highest delta segment next to the books or loans file, 0 when there is none
+    public static int latestDeltaSeq(String booksPath, String loansPath) throws IOException {
+        int latest = 0;
+        for (int seq : CsvSaver.deltaSeqs(booksPath)) latest = Math.max(latest, seq);
+        for (int seq : CsvSaver.deltaSeqs(loansPath)) latest = Math.max(latest, seq);
+        return latest;
+    }
+
+    //Stamp of the CSV files a library is loaded from: name, size and modification time of every base file and delta segment
+    //Any checkpoint, merge or edit of the files changes it
+    public static long sourceStamp(String booksPath, String membersPath, String loansPath) throws IOException {
+        return sourceStamp(booksPath, membersPath, loansPath, Integer.MAX_VALUE);
+    }
+
+    //Same, only counting the delta segments up to deltaSeq: later checkpoints don't change it, a merge or edit does
+    public static long sourceStamp(String booksPath, String membersPath, String loansPath, int deltaSeq) throws IOException {
+        List<String> files = new ArrayList<>();
+        for (String base : new String[]{booksPath, membersPath, loansPath}) {
+            files.add(base);
+            for (int seq : CsvSaver.deltaSeqs(base)) {
+                if (seq <= deltaSeq) files.add(CsvSaver.deltaPath(base, seq));
+            }
+        }
+
+        long stamp = 1125899906842597L;
+        for (String file : files) {
+            Path path = Path.of(file);
+            stamp = 31 * stamp + path.getFileName().toString().hashCode();
+            stamp = 31 * stamp + Files.size(path);
+            stamp = 31 * stamp + Files.getLastModifiedTime(path).toMillis();
+        }
+        return stamp;
+    }
+
+    private static void readHeader(In in, String snapshotPath) throws IOException {
+        if (in.getInt() != MAGIC) throw new IOException("Not a library snapshot: " + snapshotPath);
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Snapshot version " + version + " is not supported (expected " + VERSION + "): " + snapshotPath);
+        }
+    }
+
+    private static void code(Map<String, Integer> codes, List<String> strings, String s) {
+        if (s != null && !codes.containsKey(s)) {
+            codes.put(s, strings.size());
+            strings.add(s);
+        }
+    }
+
+    private static int ref(Map<String, Integer> codes, String s) {
+        return s == null ? -1 : codes.get(s);
+    }
+
+    private static String string(String[] strings, int ref) {
+        return ref < 0 ? null : strings[ref];
+    }
+
+    //Buffered writer over a channel, the buffer is written out in one call whenever it fills up
+    private static final class Out implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Out(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        void putInt(int v) throws IOException {
+            ensure(4);
+            buffer.putInt(v);
+        }
+
+        void putLong(long v) throws IOException {
+            ensure(8);
+            buffer.putLong(v);
+        }
+
+        void putByte(int v) throws IOException {
+            ensure(1);
+            buffer.put((byte) v);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int n = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, n);
+                offset += n;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    //Buffered reader over a channel, refills the buffer with one read call when it runs low
+    private static final class In implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        In(FileChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) return;
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) throw new EOFException("Snapshot is truncated");
+            }
+            buffer.flip();
+        }
+
+        int getInt() throws IOException {
+            require(4);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            require(8);
+            return buffer.getLong();
+        }
+
+        byte getByte() throws IOException {
+            require(1);
+            return buffer.get();
+        }
+
+        byte[] get(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                require(1);
+                int n = Math.min(buffer.remaining(), length - offset);
+                buffer.get(bytes, offset, n);
+                offset += n;
+            }
+            return bytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LibrarySnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path writeLibrary() throws Exception {
+        return TestLibraryFiles.write(tempDir,
+                "1,\"Storm, Rising\",Erin Hunter,2004,Fantasy,2,1\n" +
+                "2,Tintenblut,Cornelia Funke,2005,Fantasy,1,1\n" +
+                "3,Çalıkuşu,Reşat Nuri Güntekin,1922,Roman,3,3\n",
+                "REG,M1,Charlie D,m1@test.com,117806,3,,\n" +
+                "STU,M2,Nisa C,m2@test.com,124031,4,S9510,BIO\n",
+                "1,M1,2025-01-01,2025-01-15,,false\n" +
+                "2,M2,2025-02-01,2025-02-15,2025-02-20,true\n");
+    }
+
+    private String path(Path dir, String name) {
+        return dir.resolve(name).toString();
+    }
+
+    //Every field of every row, to compare two loads
+    private List<String> rows(ByteCsvLoader.Library library) {
+        List<String> rows = new ArrayList<>();
+        for (Book b : library.books()) {
+            rows.add(b.getId() + "|" + b.getTitle() + "|" + b.getAuthor() + "|" + b.getYear() + "|" + b.getCategory()
+                    + "|" + b.getTotalCopies() + "|" + b.getAvailableCopies());
+        }
+        for (Member m : library.members()) {
+            String row = m.getClass().getSimpleName() + "|" + m.getMemID() + "|" + m.getName() + "|" + m.getEmail()
+                    + "|" + m.getNumber() + "|" + m.getMaxBooksAllowed();
+            if (m instanceof StudentMember s) row += "|" + s.getStuID() + "|" + s.getDepartment();
+            rows.add(row);
+        }
+        for (Loan l : library.loans()) {
+            rows.add(l.getBook().getId() + "|" + l.getMember().getMemID() + "|" + l.getLoanDate() + "|" + l.getDueDate()
+                    + "|" + l.getReturnDate() + "|" + l.isReturned());
+        }
+        return rows;
+    }
+
+    //Testing that a snapshot reads back exactly what the CSV files hold, with loans pointing at the snapshot's own objects
+    @Test
+    void snapshot_roundTripsCsv() throws Exception {
+        Path dir = writeLibrary();
+        String snapshot = path(dir, "library.snapshot");
+        SnapshotConverter.toSnapshot(path(dir, "books.csv"), path(dir, "members.csv"), path(dir, "loans.csv"), snapshot);
+
+        ByteCsvLoader.Library csv = ByteCsvLoader.loadLibrary(path(dir, "books.csv"), path(dir, "members.csv"), path(dir, "loans.csv"));
+        ByteCsvLoader.Library binary = LibrarySnapshot.read(snapshot);
+        assertEquals(rows(csv), rows(binary));
+        assertSame(binary.books().get(0), binary.loans().get(0).getBook());
+        assertSame(binary.members().get(1), binary.loans().get(1).getMember());
+
+        //and back to CSV
+        Path out = Files.createDirectory(dir.resolve("csv"));
+        SnapshotConverter.toCsv(snapshot, path(out, "books.csv"), path(out, "members.csv"), path(out, "loans.csv"));
+        assertEquals(rows(csv), rows(ByteCsvLoader.loadLibrary(path(out, "books.csv"), path(out, "members.csv"), path(out, "loans.csv"))));
+    }
+
+    //Testing that the manager uses a current snapshot, and falls back to CSV once the files change
+    @Test
+    void manager_prefersCurrentSnapshot() throws Exception {
+        Path dir = writeLibrary();
+        String snapshot = path(dir, "library.snapshot");
+
+        //first start: no snapshot, loads CSV and writes one
+        LibManager first = new LibManager();
+        first.loadFromSnapshotOrCsv(snapshot, path(dir, "books.csv"), path(dir, "members.csv"), path(dir, "loans.csv"));
+        assertTrue(LibrarySnapshot.isCurrent(snapshot,
+                LibrarySnapshot.sourceStamp(path(dir, "books.csv"), path(dir, "members.csv"), path(dir, "loans.csv"))));
+
+        //a snapshot with a changed row but the same stamp proves the second start read the snapshot, not the CSV
+        ByteCsvLoader.Library library = LibrarySnapshot.read(snapshot);
+        library.books().set(2, new Book(3, "Kuyucaklı Yusuf", "Sabahattin Ali", 1937, "Roman", 3));
+        LibrarySnapshot.write(snapshot, library,
+                LibrarySnapshot.sourceStamp(path(dir, "books.csv"), path(dir, "members.csv"), path(dir, "loans.csv")));
+
+        LibManager second = new LibManager();
+        second.loadFromSnapshotOrCsv(snapshot, path(dir, "books.csv"), path(dir, "members.csv"), path(dir, "loans.csv"));
+        assertEquals("Kuyucaklı Yusuf", second.findBookById(3).getTitle());
+        assertEquals(1, second.getActiveLoansMember(second.findMemberById("M1")).size());
+
+        //touching a CSV file makes the snapshot stale
+        Path books = dir.resolve("books.csv");
+        Files.setLastModifiedTime(books, FileTime.fromMillis(Files.getLastModifiedTime(books).toMillis() + 5000));
+        LibManager third = new LibManager();
+        third.loadFromSnapshotOrCsv(snapshot, path(dir, "books.csv"), path(dir, "members.csv"), path(dir, "loans.csv"));
+        assertEquals("Çalıkuşu", third.findBookById(3).getTitle());
+    }
+
+    //Testing that a checkpoint leaves the snapshot current, and the next start applies the new segments on top of it
+    @Test
+    void manager_appliesCheckpointsOnTopOfSnapshot() throws Exception {
+        Path dir = writeLibrary();
+        String snapshot = path(dir, "library.snapshot");
+
+        LibManager first = new LibManager();
+        first.loadFromSnapshotOrCsv(snapshot, path(dir, "books.csv"), path(dir, "members.csv"), path(dir, "loans.csv"));
+        assertNull(first.getSnapshotFailure());
+        Member m1 = first.findMemberById("M1");
+        assertTrue(first.borrowBook(m1, first.findBookById(2), LocalDate.of(2025, 3, 1)));
+        first.returnBook(m1, first.findBookById(1), LocalDate.of(2025, 1, 10));
+        first.checkpoint(path(dir, "books.csv"), path(dir, "loans.csv"));
+        assertTrue(LibrarySnapshot.isCurrent(snapshot, path(dir, "books.csv"), path(dir, "members.csv"), path(dir, "loans.csv")));
+
+        LibManager second = new LibManager();
+        second.loadFromSnapshotOrCsv(snapshot, path(dir, "books.csv"), path(dir, "members.csv"), path(dir, "loans.csv"));
+        Book book1 = second.findBookById(1);
+        assertEquals(2, book1.getAvailableCopies());
+        assertEquals(0, second.findBookById(2).getAvailableCopies());
+        List<Loan> active = second.getActiveLoansMember(second.findMemberById("M1"));
+        assertEquals(1, active.size());
+        assertEquals(2, active.get(0).getBook().getId());
+        //the loan of the book the checkpoint replaced points at the new Book object
+        for (Loan loan : second.getLoans()) {
+            if (loan.getBook().getId() == 1) assertSame(book1, loan.getBook());
+        }
+
+        //same rows as loading the CSV files with their segments
+        ByteCsvLoader.Library csv = ByteCsvLoader.loadLibrary(path(dir, "books.csv"), path(dir, "members.csv"), path(dir, "loans.csv"));
+        try (ReadTransaction read = second.beginRead()) {
+            assertEquals(rows(csv), rows(new ByteCsvLoader.Library(read.getBooks(), read.getMembers(), read.getLoans())));
+        }
+    }
+
+    //Testing that a file from another version is not treated as current
+    @Test
+    void snapshot_rejectsOtherVersions() throws Exception {
+        Path dir = writeLibrary();
+        Path snapshot = dir.resolve("library.snapshot");
+        SnapshotConverter.toSnapshot(path(dir, "books.csv"), path(dir, "members.csv"), path(dir, "loans.csv"), snapshot.toString());
+        long stamp = LibrarySnapshot.sourceStamp(path(dir, "books.csv"), path(dir, "members.csv"), path(dir, "loans.csv"));
+        assertTrue(LibrarySnapshot.isCurrent(snapshot.toString(), stamp));
+
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[7] = (byte) (LibrarySnapshot.VERSION + 1);
+        Files.write(snapshot, bytes);
+        assertFalse(LibrarySnapshot.isCurrent(snapshot.toString(), stamp));
+        assertThrows(IOException.class, () -> LibrarySnapshot.read(snapshot.toString()));
+    }
+}
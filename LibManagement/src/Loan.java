@@ -12,6 +12,11 @@ public class Loan {
     private LocalDate dueDate;
     private LocalDate returnDate;
     private boolean returned;
+    //Version of the commit that returned the loan (Long.MAX_VALUE while open), read by ReadTransaction
+    volatile long returnedVersion = Long.MAX_VALUE;
+    //Fee accrued on the loan by the FeeLedger assessment with this id (0 = none), taken back off when it is returned
+    long accrualId;
+    long accruedCents;
 
     //Creates a new loan and then sets the duedate to 14 days after the book has been loaned
     public Loan(Book book, Member member, LocalDate loanDate){
@@ -0,0 +1,400 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/*
+* Cold tier for returned loans: an append-only run of fixed 16-byte records plus per-member and per-book indexes
+* Record: book id, member ordinal, loan epoch-day, return epoch-day
+* Member IDs are stored once each in a side file (<file>.members, one ID per line, line n is ordinal n),
+* a page resolves the IDs back to Book/Member objects through the library the history is bound to
+* The indexes hold only record numbers, so memory is 4 bytes per loan per index; a page of history reads just
+* its own records from the file (or the in-memory buffer when no file is given)
+* Returns only queue the loan here, the queue is moved into the records when history is read or the manager checkpoints
+* Records stay in the order they were added: returns as they happened, loaded loans in the order of the loans file,
+* which is not sorted by return date, so a page is not sorted by it either
+*
+* The file is kept across restarts: opening it reads the member IDs back and rebuilds the indexes from the records,
+* a record or member line cut off by a crash is dropped. Every returned loan is offered once per run (loaded from the
+* loans file or snapshot, replayed from the journal, or returned live), so an offered loan is only written when the file
+* holds that exact record fewer times than it was offered this run; a restart appends nothing it already has
+ */
+
+public class LoanHistory implements Closeable {
+
+    private static final int RECORD_BYTES = 16;
+    //Loaders streaming their rows through addLoaded write them in batches of this many
+    private static final int LOAD_BATCH = 8192;
+
+    //Returned loans not written to the records yet, filled by returns without taking any lock
+    private final ConcurrentLinkedQueue<Loan> pending = new ConcurrentLinkedQueue<>();
+    private int loadedSinceFlush;
+
+    //Record storage, exactly one of these is used
+    private final FileChannel channel;
+    private final FileChannel memberChannel;
+    private ByteBuffer memory;
+    private int records;
+
+    //Member IDs by ordinal, and the record numbers per book id / member ordinal
+    private final List<String> memberIds = new ArrayList<>();
+    private final Map<String, Integer> memberOrdinals = new HashMap<>();
+    private final Map<Integer, PostingList> recordsByBook = new HashMap<>();
+    private final List<PostingList> recordsByMember = new ArrayList<>();
+    //how often each record is in the file and how often it was offered this run
+    private final RecordCounts counts = new RecordCounts();
+
+    //Resolve the stored IDs back to the library's objects, see bind
+    private IntFunction<Book> books;
+    private Function<String, Member> members;
+
+    //History kept in memory, for tests and when nothing is persisted
+    public LoanHistory(){
+        this.channel = null;
+        this.memberChannel = null;
+        this.memory = ByteBuffer.allocate(RECORD_BYTES * 1024);
+    }
+
+    //History paged from a file, the records it already holds are kept and indexed
+    public LoanHistory(String filePath) throws IOException {
+        this.memberChannel = FileChannel.open(Path.of(filePath + ".members"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            readMemberIds();
+            readRecords();
+        } catch (IOException | RuntimeException e){
+            close();
+            throw e;
+        }
+    }
+
+    //Sets how book ids and member IDs are turned back into objects when a page is read (LibManager binds its lookups)
+    public synchronized void bind(IntFunction<Book> books, Function<String, Member> members){
+        this.books = books;
+        this.members = members;
+    }
+
+    //Queues a returned loan, cheap enough for the return path
+    public void add(Loan loan){
+        if (!loan.isReturned()){
+            throw new IllegalStateException("Only returned loans go to history");
+        }
+        pending.add(loan);
+    }
+
+    //Adds a returned loan read by a loader, written out every LOAD_BATCH loans so a whole file of them is never held
+    public synchronized void addLoaded(Loan loan){
+        add(loan);
+        if (++loadedSinceFlush >= LOAD_BATCH) flush();
+    }
+
+    //Writes the queued loans the file doesn't hold yet as records and indexes them
+    public synchronized void flush(){
+        loadedSinceFlush = 0;
+        if (pending.isEmpty()) return;
+        List<Loan> batch = new ArrayList<>();
+        for (Loan loan; (loan = pending.poll()) != null; ) batch.add(loan);
+
+        ByteBuffer out = ByteBuffer.allocate(batch.size() * RECORD_BYTES);
+        StringBuilder newMembers = new StringBuilder();
+        int first = records;
+        for (Loan loan : batch){
+            int book = loan.getBook().getId();
+            int member = memberOrdinal(loan.getMember().getMemID(), newMembers);
+            int loanDay = (int) loan.getLoanDate().toEpochDay();
+            int returnDay = (int) loan.getReturnDate().toEpochDay();
+            if (!counts.offer(book, member, loanDay, returnDay)) continue;
+
+            out.putInt(book).putInt(member).putInt(loanDay).putInt(returnDay);
+            index(book, member, records);
+            records++;
+        }
+        out.flip();
+        //member lines go first, a record never refers to an ordinal the side file doesn't have
+        if (memberChannel != null && newMembers.length() > 0){
+            try {
+                ByteBuffer lines = ByteBuffer.wrap(newMembers.toString().getBytes(StandardCharsets.UTF_8));
+                long position = memberChannel.size();
+                while (lines.hasRemaining()){
+                    position += memberChannel.write(lines, position);
+                }
+            } catch (IOException e){
+                throw new UncheckedIOException("Could not write loan history", e);
+            }
+        }
+        write(out, (long) first * RECORD_BYTES);
+    }
+
+    //Loans of a member in the order they were added (flush keeps the queue's order), skipping the first from
+    public synchronized List<Loan> forMember(Member member, int from, int count){
+        flush();
+        Integer ordinal = memberOrdinals.get(member.getMemID());
+        return ordinal == null ? new ArrayList<>() : page(recordsByMember.get(ordinal), from, count);
+    }
+
+    //Loans of a book in the order they were added, skipping the first from
+    public synchronized List<Loan> forBook(Book book, int from, int count){
+        flush();
+        PostingList recordNumbers = recordsByBook.get(book.getId());
+        return recordNumbers == null ? new ArrayList<>() : page(recordNumbers, from, count);
+    }
+
+    //Number of returned loans of a member
+    public synchronized int countForMember(Member member){
+        flush();
+        Integer ordinal = memberOrdinals.get(member.getMemID());
+        return ordinal == null ? 0 : recordsByMember.get(ordinal).size();
+    }
+
+    //Number of returned loans of a book
+    public synchronized int countForBook(Book book){
+        flush();
+        PostingList recordNumbers = recordsByBook.get(book.getId());
+        return recordNumbers == null ? 0 : recordNumbers.size();
+    }
+
+    //Number of returned loans in the history
+    public synchronized int size(){
+        flush();
+        return records;
+    }
+
+    //Reads the requested records back as returned Loan objects (new copies, not the ones that were added)
+    private List<Loan> page(PostingList recordNumbers, int from, int count){
+        if (books == null){
+            throw new IllegalStateException("Loan history is not bound to a library");
+        }
+        int end = (int) Math.min(recordNumbers.size(), (long) Math.max(from, 0) + Math.max(count, 0));
+        List<Loan> result = new ArrayList<>(Math.max(0, end - from));
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        for (int i = Math.max(from, 0); i < end; i++){
+            record.clear();
+            read(record, (long) recordNumbers.get(i) * RECORD_BYTES);
+            record.flip();
+            int bookId = record.getInt();
+            String memberId = memberIds.get(record.getInt());
+            Book book = books.apply(bookId);
+            Member member = members.apply(memberId);
+            if (book == null || member == null){
+                throw new IllegalStateException("Loan history refers to book " + bookId + " / member " + memberId + " not in the library");
+            }
+            Loan loan = new Loan(book, member, LocalDate.ofEpochDay(record.getInt()));
+            loan.loadAsReturned(LocalDate.ofEpochDay(record.getInt()));
+            result.add(loan);
+        }
+        return result;
+    }
+
+    //Ordinal of a member ID, handing out the next one on first sight (its line is added to newLines)
+    private int memberOrdinal(String memberId, StringBuilder newLines){
+        Integer ordinal = memberOrdinals.get(memberId);
+        if (ordinal == null){
+            ordinal = addMemberId(memberId);
+            newLines.append(memberId).append('\n');
+        }
+        return ordinal;
+    }
+
+    private int addMemberId(String memberId){
+        int ordinal = memberIds.size();
+        memberIds.add(memberId);
+        memberOrdinals.put(memberId, ordinal);
+        recordsByMember.add(new PostingList());
+        return ordinal;
+    }
+
+    private void index(int book, int member, int recordNumber){
+        recordsByBook.computeIfAbsent(book, b -> new PostingList()).add(recordNumber);
+        recordsByMember.get(member).add(recordNumber);
+    }
+
+    //Reads the side file's member IDs, a last line without its newline was cut off and is removed
+    private void readMemberIds() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate((int) memberChannel.size());
+        while (data.hasRemaining()){
+            if (memberChannel.read(data, data.position()) < 0) break;
+        }
+        byte[] bytes = data.array();
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') end--;
+        if (end < bytes.length){
+            memberChannel.truncate(end);
+        }
+        int lineStart = 0;
+        for (int i = 0; i < end; i++){
+            if (bytes[i] == '\n'){
+                addMemberId(new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8));
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    //Indexes the records already in the file, cutting it at a partial record or one whose member line is missing
+    private void readRecords() throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * LOAD_BATCH);
+        long position = 0;
+        boolean valid = true;
+        while (valid && position + RECORD_BYTES <= size){
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), (size - position) / RECORD_BYTES * RECORD_BYTES));
+            read(buffer, position);
+            buffer.flip();
+            while (buffer.hasRemaining()){
+                int book = buffer.getInt();
+                int member = buffer.getInt();
+                int loanDay = buffer.getInt();
+                int returnDay = buffer.getInt();
+                if (member < 0 || member >= memberIds.size()){
+                    valid = false;
+                    break;
+                }
+                counts.counted(book, member, loanDay, returnDay);
+                index(book, member, records);
+                records++;
+            }
+            position += buffer.position();
+        }
+        if ((long) records * RECORD_BYTES < size){
+            channel.truncate((long) records * RECORD_BYTES);
+        }
+    }
+
+    private void write(ByteBuffer data, long position){
+        if (channel == null){
+            if (memory.capacity() < position + data.remaining()){
+                ByteBuffer bigger = ByteBuffer.allocate((int) Math.max(memory.capacity() * 2L, position + data.remaining()));
+                bigger.put(memory.clear());
+                memory = bigger;
+            }
+            memory.put((int) position, data, data.position(), data.remaining());
+            return;
+        }
+        try {
+            while (data.hasRemaining()){
+                position += channel.write(data, position);
+            }
+        } catch (IOException e){
+            throw new UncheckedIOException("Could not write loan history", e);
+        }
+    }
+
+    private void read(ByteBuffer into, long position){
+        if (channel == null){
+            into.put(memory.slice((int) position, into.remaining()));
+            return;
+        }
+        try {
+            while (into.hasRemaining()){
+                int n = channel.read(into, position);
+                if (n < 0) throw new IOException("Loan history ends before record at " + position);
+                position += n;
+            }
+        } catch (IOException e){
+            throw new UncheckedIOException("Could not read loan history", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (channel != null) channel.close();
+        } finally {
+            if (memberChannel != null) memberChannel.close();
+        }
+    }
+
+    /*
+    * How often each distinct record is in the file and how often it was offered this run
+    * Open addressing over the record's 16 bytes as two longs, so no object is allocated per record
+     */
+    private static final class RecordCounts {
+        private long[] high = new long[1024];
+        private long[] low = new long[1024];
+        //0 marks an empty slot, a key is only stored once it is in the file
+        private int[] inFile = new int[1024];
+        private int[] offered = new int[1024];
+        private int size;
+
+        //Counts a record found in the file at open
+        void counted(int book, int member, int loanDay, int returnDay){
+            long h = pack(book, member);
+            long l = pack(loanDay, returnDay);
+            int slot = slot(h, l);
+            if (inFile[slot] == 0) claim(slot, h, l);
+            inFile[slot]++;
+            growIfFull();
+        }
+
+        //Offers a record for this run, true if it has to be written (the file holds it fewer times than offered)
+        boolean offer(int book, int member, int loanDay, int returnDay){
+            long h = pack(book, member);
+            long l = pack(loanDay, returnDay);
+            int slot = slot(h, l);
+            if (offered[slot] < inFile[slot]){
+                offered[slot]++;
+                return false;
+            }
+            if (inFile[slot] == 0) claim(slot, h, l);
+            inFile[slot]++;
+            offered[slot]++;
+            growIfFull();
+            return true;
+        }
+
+        private static long pack(int a, int b){
+            return (long) a << 32 | (b & 0xFFFFFFFFL);
+        }
+
+        //Slot holding the key, or the empty slot where it would go
+        private int slot(long h, long l){
+            int mask = high.length - 1;
+            long hash = h * 0x9E3779B97F4A7C15L ^ l;
+            hash ^= hash >>> 29;
+            hash *= 0xBF58476D1CE4E5B9L;
+            int slot = (int) (hash ^ hash >>> 32) & mask;
+            while (inFile[slot] != 0 && (high[slot] != h || low[slot] != l)){
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void claim(int slot, long h, long l){
+            high[slot] = h;
+            low[slot] = l;
+            size++;
+        }
+
+        //Keeps at most 2/3 of the slots used so probes stay short
+        private void growIfFull(){
+            if (size * 3L < high.length * 2L) return;
+            long[] oldHigh = high;
+            long[] oldLow = low;
+            int[] oldInFile = inFile;
+            int[] oldOffered = offered;
+            high = new long[oldHigh.length * 2];
+            low = new long[oldHigh.length * 2];
+            inFile = new int[oldHigh.length * 2];
+            offered = new int[oldHigh.length * 2];
+            for (int i = 0; i < oldHigh.length; i++){
+                if (oldInFile[i] == 0) continue;
+                int slot = slot(oldHigh[i], oldLow[i]);
+                high[slot] = oldHigh[i];
+                low[slot] = oldLow[i];
+                inFile[slot] = oldInFile[i];
+                offered[slot] = oldOffered[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoanHistoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Loan returned(Book book, Member member, int day) {
+        Loan loan = new Loan(book, member, LocalDate.of(2025, 1, day));
+        loan.loadAsReturned(LocalDate.of(2025, 1, day + 3));
+        return loan;
+    }
+
+    //Binds a history to the given books and members, as LibManager does with its own lookups
+    private static void bind(LoanHistory history, List<Book> books, List<Member> members) {
+        history.bind(id -> books.stream().filter(b -> b.getId() == id).findFirst().orElse(null),
+                id -> members.stream().filter(m -> m.getMemID().equals(id)).findFirst().orElse(null));
+    }
+
+    //Testing that pages come back from the file per member and per book, in the order the loans were added
+    @Test
+    void pages_areReadFromFile_perMemberAndPerBook() throws Exception {
+        Path file = tempDir.resolve("loans.history");
+        Book dune = new Book(1, "Dune", "Herbert", 1965, "SciFi", 3);
+        Book emma = new Book(2, "Emma", "Austen", 1815, "Classic", 3);
+        Member a = new Member("A", "M1", "a@test.com", 1, 5);
+        Member b = new Member("B", "M2", "b@test.com", 2, 5);
+
+        try (LoanHistory history = new LoanHistory(file.toString())) {
+            bind(history, List.of(dune, emma), List.of(a, b));
+            for (int day = 1; day <= 10; day++) {
+                history.add(returned(day % 2 == 0 ? dune : emma, day <= 6 ? a : b, day));
+            }
+            assertEquals(10, history.size());
+            assertEquals(10L * 16, Files.size(file));
+
+            assertEquals(6, history.countForMember(a));
+            List<Loan> page = history.forMember(a, 2, 3);
+            assertEquals(3, page.size());
+            assertEquals(LocalDate.of(2025, 1, 3), page.get(0).getLoanDate());
+            assertEquals(LocalDate.of(2025, 1, 8), page.get(2).getReturnDate());
+            assertTrue(page.get(0).isReturned());
+            assertSame(emma, page.get(0).getBook());
+
+            assertEquals(5, history.countForBook(dune));
+            List<Loan> duneTail = history.forBook(dune, 3, 10);
+            assertEquals(2, duneTail.size());
+            assertSame(b, duneTail.get(1).getMember());
+            assertTrue(history.forMember(new Member("C", "M3", "c@test.com", 3, 5), 0, 10).isEmpty());
+        }
+    }
+
+    //Testing that an open loan can't be added to the history
+    @Test
+    void add_rejectsOpenLoan() {
+        LoanHistory history = new LoanHistory();
+        Loan open = new Loan(new Book(1, "Dune", "Herbert", 1965, "SciFi", 1),
+                new Member("A", "M1", "a@test.com", 1, 5), LocalDate.of(2025, 1, 1));
+        assertThrows(IllegalStateException.class, () -> history.add(open));
+    }
+
+    //Testing that reopening keeps the records, and loans offered again after a restart are not written twice
+    @Test
+    void reopen_keepsRecords_andSkipsLoansAlreadyInTheFile() throws Exception {
+        Path file = tempDir.resolve("loans.history");
+        Book dune = new Book(1, "Dune", "Herbert", 1965, "SciFi", 3);
+        Member a = new Member("A", "M1", "a@test.com", 1, 5);
+        Member b = new Member("B", "M2", "b@test.com", 2, 5);
+
+        try (LoanHistory history = new LoanHistory(file.toString())) {
+            history.add(returned(dune, a, 1));
+            history.add(returned(dune, b, 2));
+            //borrowed and returned twice on the same days: two loans, two records
+            history.add(returned(dune, a, 1));
+            assertEquals(3, history.size());
+        }
+
+        try (LoanHistory history = new LoanHistory(file.toString())) {
+            bind(history, List.of(dune), List.of(a, b));
+            assertEquals(3, history.size());
+            assertEquals(2, history.countForMember(a));
+            assertEquals(LocalDate.of(2025, 1, 5), history.forMember(b, 0, 10).get(0).getReturnDate());
+
+            //the next start offers every loan once more, plus one new return
+            history.add(returned(dune, a, 1));
+            history.add(returned(dune, b, 2));
+            history.add(returned(dune, a, 1));
+            history.add(returned(dune, b, 7));
+            assertEquals(4, history.size());
+            assertEquals(4L * 16, Files.size(file));
+            assertEquals(2, history.countForMember(b));
+        }
+    }
+
+    //Testing that a record or member line cut off by a crash is dropped when the file is opened
+    @Test
+    void open_dropsTornRecordAndMemberLine() throws Exception {
+        Path file = tempDir.resolve("loans.history");
+        Book dune = new Book(1, "Dune", "Herbert", 1965, "SciFi", 3);
+        Member a = new Member("A", "M1", "a@test.com", 1, 5);
+        try (LoanHistory history = new LoanHistory(file.toString())) {
+            history.add(returned(dune, a, 1));
+            history.flush();
+        }
+        Files.write(file, new byte[] {0, 0, 0, 1, 0, 0}, StandardOpenOption.APPEND);
+        Files.writeString(Path.of(file + ".members"), "M", StandardOpenOption.APPEND);
+
+        try (LoanHistory history = new LoanHistory(file.toString())) {
+            bind(history, List.of(dune), List.of(a));
+            assertEquals(1, history.size());
+            assertEquals(16, Files.size(file));
+            assertEquals("M1\n", Files.readString(Path.of(file + ".members")));
+            assertEquals(1, history.forBook(dune, 0, 10).size());
+        }
+    }
+
+    //Testing that a restart reloading the same loans file and replaying the journal adds no duplicate history
+    @Test
+    void restart_withJournalReplay_addsNoDuplicates() throws Exception {
+        Path dir = TestLibraryFiles.write(tempDir,
+                "1,Dune,Herbert,1965,SciFi,2,2\n",
+                "REG,M1,Charlie D,m1@test.com,117806,5,,\n",
+                "1,M1,2025-01-01,2025-01-15,2025-01-03,true\n");
+        String history = dir.resolve("loans.history").toString();
+        String journal = dir.resolve("loans.journal").toString();
+
+        for (int start = 0; start < 3; start++) {
+            try (LoanHistory loanHistory = new LoanHistory(history); LoanJournal loanJournal = new LoanJournal(journal)) {
+                LibManager manager = new LibManager(1, loanHistory);
+                manager.loadFromCsv(dir.resolve("books.csv").toString(), dir.resolve("members.csv").toString(),
+                        dir.resolve("loans.csv").toString(), loanJournal);
+                Member member = manager.findMemberById("M1");
+                Book book = manager.findBookById(1);
+                if (start == 0) {
+                    //journaled only, every later start replays it
+                    manager.borrowBook(member, book, LocalDate.of(2025, 2, 1));
+                    manager.returnBook(member, book, LocalDate.of(2025, 2, 4));
+                }
+                assertEquals(2, manager.getLoanHistory(member).size());
+                assertEquals(2, loanHistory.size());
+            }
+        }
+    }
+}
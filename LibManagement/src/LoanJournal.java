@@ -0,0 +1,289 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+* Append-only write-ahead journal for borrows and returns
+* Each operation appends one short line, so persisting a checkout no longer rewrites the CSV files
+* On startup the CSV files are the last checkpoint and the journal is replayed on top of them
+*
+* Appends are group-committed: they are queued and a background writer thread writes everything queued so far
+* with a single write + fsync, completing each record's future once it is on disk
+* A flush happens when maxBatch records are waiting or maxDelayMillis has passed since the first one (0 = flush right away,
+* records arriving during an fsync still share the next one)
+*
+* Record format (one per line):  B,bookId,memberId,loanDate  or  R,bookId,memberId,returnDate
+* The member ID is escaped like the CSV files (quoted when it holds a comma or quote), LibManager rejects IDs with line breaks
+ */
+
+public class LoanJournal implements Closeable {
+
+    private static final int DEFAULT_MAX_BATCH = 1024;
+
+    private final Path path;
+    //exists only while a checkpoint is being installed, see checkpoint()
+    private final Path marker;
+    private final FileChannel channel;
+
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+    //future of the most recently queued record, completing it means everything before it is on disk too
+    private volatile CompletableFuture<Void> lastQueued = CompletableFuture.completedFuture(null);
+
+    //flush statistics
+    private volatile int lastFlushSize;
+    private volatile long lastFlushNanos;
+    private volatile long flushCount;
+    private volatile long recordCount;
+
+    //A queued record and the future completed once it is durable (a null record asks the writer to stop)
+    private record Pending(String record, CompletableFuture<Void> done) {}
+
+    public LoanJournal(String filePath) throws IOException {
+        this(filePath, DEFAULT_MAX_BATCH, 0);
+    }
+
+    public LoanJournal(String filePath, int maxBatch, long maxDelayMillis) throws IOException {
+        if (maxBatch <= 0 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("maxBatch must be greater than 0 and maxDelayMillis not negative");
+        }
+        this.path = Path.of(filePath);
+        this.marker = Path.of(filePath + ".checkpoint");
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+
+        this.writer = new Thread(this::writeLoop, "loan-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    //Queues a borrow, the future completes once the record is on disk
+    public CompletableFuture<Void> appendBorrow(Book book, Member member, LocalDate loanDate) {
+        return append("B," + book.getId() + "," + CsvSaver.escape(member.getMemID()) + "," + loanDate);
+    }
+
+    //Queues a return, the future completes once the record is on disk
+    public CompletableFuture<Void> appendReturn(Book book, Member member, LocalDate returnDate) {
+        return append("R," + book.getId() + "," + CsvSaver.escape(member.getMemID()) + "," + returnDate);
+    }
+
+    //Records are written in the order they are queued, the caller's locks decide that order
+    //A closed journal fails the future like a failed write, the caller has already applied the change
+    private synchronized CompletableFuture<Void> append(String record) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("Journal is closed"));
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        queue.add(new Pending(record, done));
+        lastQueued = done;
+        return done;
+    }
+
+    //Waits until every record queued so far is on disk
+    public void sync() throws IOException {
+        try {
+            lastQueued.join();
+        } catch (RuntimeException e) {
+            throw new IOException("Journal flush failed", e.getCause() == null ? e : e.getCause());
+        }
+    }
+
+    //Background writer: takes the first waiting record, gathers more up to the batch size / time window, then writes them with one fsync
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatch) {
+                    Pending next = maxDelayNanos == 0
+                            ? queue.poll()
+                            : queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+
+            List<Pending> records = new ArrayList<>(batch.size());
+            for (Pending p : batch) {
+                if (p.record() == null) stopping = true;
+                else records.add(p);
+            }
+            flush(records);
+            for (Pending p : batch) {
+                if (p.record() == null) p.done().complete(null);
+            }
+            batch.clear();
+        }
+    }
+
+    //Writes one batch and fsyncs once, then completes the batch's futures
+    private void flush(List<Pending> records) {
+        if (records.isEmpty()) return;
+
+        long start = System.nanoTime();
+        StringBuilder sb = new StringBuilder();
+        for (Pending p : records) {
+            sb.append(p.record()).append('\n');
+        }
+        try {
+            synchronized (channel) {
+                ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            lastFlushNanos = System.nanoTime() - start;
+            lastFlushSize = records.size();
+            flushCount++;
+            recordCount += records.size();
+            for (Pending p : records) p.done().complete(null);
+        } catch (IOException e) {
+            for (Pending p : records) p.done().completeExceptionally(e);
+        }
+    }
+
+    //Records queued but not yet on disk
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    //Number of records written by the most recent flush
+    public int getLastFlushSize() {
+        return lastFlushSize;
+    }
+
+    //Time the most recent flush (write + fsync) took, in nanoseconds
+    public long getLastFlushNanos() {
+        return lastFlushNanos;
+    }
+
+    //Total flushes so far, recordCount / flushCount is the average group size
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    //Re-applies every journaled operation to a manager loaded from the last checkpoint, returns how many were replayed
+    //The manager must not have this journal attached yet, otherwise the replayed operations would be journaled again
+    public int replay(LibManager manager) throws IOException {
+        byte[] bytes;
+        int end;
+        synchronized (channel) {
+            bytes = Files.readAllBytes(path);
+
+            //a last line without its newline means the process died mid-append, that operation never completed
+            //it is cut off so the next append starts on a clean line
+            end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') end--;
+            if (end < bytes.length) {
+                channel.truncate(end);
+                channel.force(true);
+            }
+        }
+        String text = new String(bytes, 0, end, StandardCharsets.UTF_8);
+
+        String[] lines = text.split("\n");
+        int replayed = 0;
+
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.isBlank()) continue;
+
+            String[] p = CsvLoader.splitCsvLine(line);
+            try {
+                Book book = manager.findBookById(Integer.parseInt(p[1]));
+                Member member = manager.findMemberById(p[2]);
+                LocalDate date = LocalDate.parse(p[3]);
+                if (book == null || member == null) {
+                    throw new IllegalStateException("unknown book or member");
+                }
+
+                if (p[0].equals("B")) {
+                    manager.borrowBook(member, book, date);
+                } else if (p[0].equals("R")) {
+                    manager.returnBook(member, book, date);
+                } else {
+                    throw new IllegalStateException("unknown record type " + p[0]);
+                }
+                replayed++;
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("Journal line " + (i + 1) + " could not be replayed: " + e.getMessage(), e);
+            }
+        }
+        return replayed;
+    }
+
+    //Installs a checkpoint and empties the journal
+    //The caller has written each checkpoint file as "<file>.tmp", a marker listing them is written before they are moved into place,
+    //so a crash at any point either leaves the old checkpoint + full journal, or a complete new checkpoint that recover() installs
+    //The caller must stop new borrows/returns while this runs, records still queued are flushed first so none is truncated unwritten
+    public void checkpoint(List<String> files) throws IOException {
+        sync();
+
+        for (String file : files) {
+            CsvSaver.fsync(file + ".tmp");
+        }
+        Files.write(marker, files, StandardCharsets.UTF_8);
+        CsvSaver.fsync(marker.toString());
+
+        install(files);
+    }
+
+    //Finishes a checkpoint that was interrupted, call before loading the CSV files
+    //Without a marker any .tmp files were never completed and are ignored, the old checkpoint and the journal are still valid
+    public void recover() throws IOException {
+        if (Files.exists(marker)) {
+            install(Files.readAllLines(marker, StandardCharsets.UTF_8));
+        }
+    }
+
+    //Moves the completed .tmp files into place, empties the journal and removes the marker
+    private void install(List<String> files) throws IOException {
+        CsvSaver.installTmp(files);
+
+        synchronized (channel) {
+            channel.truncate(0);
+            channel.force(true);
+        }
+
+        Files.delete(marker);
+    }
+
+    @Override
+    public void close() throws IOException {
+        CompletableFuture<Void> stopped = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            queue.add(new Pending(null, stopped));
+        }
+        stopped.join();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+}
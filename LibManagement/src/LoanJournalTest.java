@@ -0,0 +1,174 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoanJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    //Writes a small library to the temp folder and returns the folder
+    private Path writeLibrary() throws Exception {
+        return TestLibraryFiles.write(tempDir,
+                "1,Rising Storm,Erin Hunter,2004,Fantasy,2,2\n",
+                "REG,M1,Charlie D,m1@test.com,117806,2,,\n",
+                "");
+    }
+
+    private LibManager load(Path dir, LoanJournal journal) throws Exception {
+        LibManager manager = new LibManager();
+        manager.loadFromCsv(dir.resolve("books.csv").toString(), dir.resolve("members.csv").toString(),
+                dir.resolve("loans.csv").toString(), journal);
+        return manager;
+    }
+
+    //Testing that a borrow survives a restart through the journal alone (the CSV files are not rewritten)
+    @Test
+    void replay_restoresBorrowsAndReturns_afterRestart() throws Exception {
+        Path dir = writeLibrary();
+        String loansCsv = Files.readString(dir.resolve("loans.csv"));
+
+        try (LoanJournal journal = new LoanJournal(dir.resolve("loans.journal").toString())) {
+            LibManager manager = load(dir, journal);
+            Member member = manager.findMemberById("M1");
+            Book book = manager.findBookById(1);
+            manager.borrowBook(member, book, LocalDate.of(2025, 1, 1));
+            manager.returnBook(member, book, LocalDate.of(2025, 1, 5));
+            manager.borrowBook(member, book, LocalDate.of(2025, 1, 6));
+        }
+        assertEquals(loansCsv, Files.readString(dir.resolve("loans.csv")));
+
+        try (LoanJournal journal = new LoanJournal(dir.resolve("loans.journal").toString())) {
+            LibManager manager = load(dir, journal);
+            assertEquals(2, manager.getLoans().size());
+            assertEquals(1, manager.findBookById(1).getAvailableCopies());
+            assertEquals(LocalDate.of(2025, 1, 6),
+                    manager.getActiveLoansMember(manager.findMemberById("M1")).get(0).getLoanDate());
+        }
+    }
+
+    //Testing that a borrow the journal can't write stays applied and is reported as not durable
+    @Test
+    void failedJournalWrite_keepsChangeApplied() throws Exception {
+        Path dir = writeLibrary();
+        LoanJournal journal = new LoanJournal(dir.resolve("loans.journal").toString());
+        LibManager manager = load(dir, journal);
+        journal.close();
+
+        Member member = manager.findMemberById("M1");
+        assertThrows(UncheckedIOException.class, () -> manager.borrowBook(member, manager.findBookById(1), LocalDate.of(2025, 1, 1)));
+        assertEquals(1, manager.getActiveLoansMember(member).size());
+        assertEquals(1, manager.findBookById(1).getAvailableCopies());
+    }
+
+    //Testing that a checkpoint writes the changed rows as delta segments and empties the journal
+    @Test
+    void checkpoint_writesDeltas_andEmptiesJournal() throws Exception {
+        Path dir = writeLibrary();
+        Path journalPath = dir.resolve("loans.journal");
+        String loansCsv = Files.readString(dir.resolve("loans.csv"));
+
+        try (LoanJournal journal = new LoanJournal(journalPath.toString())) {
+            LibManager manager = load(dir, journal);
+            manager.borrowBook(manager.findMemberById("M1"), manager.findBookById(1), LocalDate.of(2025, 1, 1));
+            assertTrue(Files.size(journalPath) > 0);
+
+            manager.checkpoint(dir.resolve("books.csv").toString(), dir.resolve("loans.csv").toString());
+        }
+
+        assertEquals(0, Files.size(journalPath));
+        assertEquals(loansCsv, Files.readString(dir.resolve("loans.csv")));
+        assertTrue(Files.readString(dir.resolve("loans.csv.delta.1")).contains("1,M1,2025-01-01,2025-01-15,,false"));
+        assertTrue(Files.readString(dir.resolve("books.csv.delta.1")).contains("1,Rising Storm,Erin Hunter,2004,Fantasy,2,1"));
+
+        try (LoanJournal journal = new LoanJournal(journalPath.toString())) {
+            LibManager manager = load(dir, journal);
+            assertEquals(1, manager.getLoans().size());
+            assertEquals(1, manager.findBookById(1).getAvailableCopies());
+        }
+    }
+
+    //Testing that a half-written last record (crash mid-append) is ignored on replay
+    @Test
+    void replay_ignoresTornLastRecord() throws Exception {
+        Path dir = writeLibrary();
+        Path journalPath = dir.resolve("loans.journal");
+        Files.writeString(journalPath, "B,1,M1,2025-01-01\nR,1,M1,2025-0");
+
+        try (LoanJournal journal = new LoanJournal(journalPath.toString())) {
+            LibManager manager = load(dir, journal);
+            assertEquals(1, manager.getActiveLoansMember(manager.findMemberById("M1")).size());
+        }
+        assertEquals("B,1,M1,2025-01-01\n", Files.readString(journalPath));
+    }
+
+    //Testing that a member ID with a comma and a quote is escaped in the journal and replayed to the same member
+    @Test
+    void replay_restoresMemberIdWithCommaAndQuote() throws Exception {
+        Path dir = TestLibraryFiles.write(tempDir,
+                "1,Rising Storm,Erin Hunter,2004,Fantasy,2,2\n",
+                "REG,\"M,1 \"\"A\"\"\",Charlie D,m1@test.com,117806,2,,\n",
+                "");
+        String id = "M,1 \"A\"";
+
+        try (LoanJournal journal = new LoanJournal(dir.resolve("loans.journal").toString())) {
+            LibManager manager = load(dir, journal);
+            Member member = manager.findMemberById(id);
+            assertNotNull(member);
+            manager.borrowBook(member, manager.findBookById(1), LocalDate.of(2025, 1, 1));
+        }
+        assertEquals("B,1,\"M,1 \"\"A\"\"\",2025-01-01\n", Files.readString(dir.resolve("loans.journal")));
+
+        try (LoanJournal journal = new LoanJournal(dir.resolve("loans.journal").toString())) {
+            LibManager manager = load(dir, journal);
+            assertEquals(1, manager.getActiveLoansMember(manager.findMemberById(id)).size());
+            assertEquals(1, manager.findBookById(1).getAvailableCopies());
+        }
+    }
+
+    //Testing that a member ID with a line break is rejected, it could not be written as one journal record
+    @Test
+    void addMember_rejectsIdWithLineBreak() {
+        LibManager manager = new LibManager();
+        assertThrows(IllegalArgumentException.class,
+                () -> manager.addMember(new Member("A", "M1\nB,1,M2,2025-01-01", "a@test.com", 1, 2)));
+        assertNull(manager.findMemberById("M1\nB,1,M2,2025-01-01"));
+    }
+
+    //Testing group commit: a burst of async borrows is flushed in shared batches and every future completes once durable
+    @Test
+    void asyncBorrows_areGroupCommitted() throws Exception {
+        StringBuilder books = new StringBuilder();
+        StringBuilder members = new StringBuilder();
+        for (int i = 1; i <= 200; i++) {
+            books.append(i).append(",B").append(i).append(",A,2023,Cat,1,1\n");
+            members.append("REG,M").append(i).append(",M,m@test.com,").append(i).append(",2,,\n");
+        }
+        Path dir = TestLibraryFiles.write(tempDir, books.toString(), members.toString(), "");
+        Path journalPath = dir.resolve("loans.journal");
+
+        try (LoanJournal journal = new LoanJournal(journalPath.toString(), 64, 20)) {
+            LibManager manager = load(dir, journal);
+
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 1; i <= 200; i++) {
+                futures.add(manager.borrowBookAsync(manager.findMemberById("M" + i), manager.findBookById(i), LocalDate.of(2025, 1, 1)));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+            assertEquals(200, journal.getRecordCount());
+            assertTrue(journal.getFlushCount() < 200);
+            assertTrue(journal.getLastFlushSize() > 0);
+            assertEquals(0, journal.getQueueDepth());
+        }
+        assertEquals(200, Files.readAllLines(journalPath).size());
+    }
+}
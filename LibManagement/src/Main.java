@@ -6,13 +6,24 @@ public class Main {
         String booksPath = "C:\\Users\\KekkersV2\\Desktop\\LibManagement\\LibManagement\\src\\data\\books.csv";
         String membersPath = "C:\\Users\\KekkersV2\\Desktop\\LibManagement\\LibManagement\\src\\data\\members.csv";
         String loansPath = "C:\\Users\\KekkersV2\\Desktop\\LibManagement\\LibManagement\\src\\data\\loans.csv";
+        //Journal of borrows/returns since the CSV files were last written
+        String journalPath = "C:\\Users\\KekkersV2\\Desktop\\LibManagement\\LibManagement\\src\\data\\loans.journal";
+        //Binary copy of the CSV files, used at startup while the CSV files are unchanged
+        String snapshotPath = "C:\\Users\\KekkersV2\\Desktop\\LibManagement\\LibManagement\\src\\data\\library.snapshot";
+        //Returned loans, paged from disk for the loan history instead of kept in memory (kept across starts, only new returns are appended)
+        String historyPath = "C:\\Users\\KekkersV2\\Desktop\\LibManagement\\LibManagement\\src\\data\\loans.history";
 
-        //Create the lib manager (handles all borrowing/returning logic)
-        LibManager manager = new LibManager();
+        //Load data from the snapshot (or the CSV files when it is out of date), then replay the journal on top
+        try (LoanJournal journal = new LoanJournal(journalPath);
+             LoanHistory history = new LoanHistory(historyPath)) {
+            //Create the lib manager (handles all borrowing/returning logic)
+            LibManager manager = new LibManager(1, history);
+            manager.loadFromSnapshotOrCsv(snapshotPath, booksPath, membersPath, loansPath, journal);
+            if (manager.getSnapshotFailure() != null){
+                System.out.println("Could not write snapshot: " + manager.getSnapshotFailure().getMessage());
+            }
 
-        //Load data from CSV files into the system
-        manager.loadFromCsv(booksPath, membersPath, loansPath);
-
-        new LibraryCLI(manager, booksPath, loansPath).run();
+            new LibraryCLI(manager, booksPath, loansPath).run();
+        }
     }
 }
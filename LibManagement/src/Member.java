@@ -45,6 +45,10 @@ public class Member {
         return maxBooksAllowed;
     }
 
+    //Swaps repeating fields for the dictionary's shared instances, a regular member has none (ID, name and email are unique)
+    void internStrings(StringDictionary dictionary){
+    }
+
     //Setting the fee for loan being late for normal members
     public double calcLateFee(long daysLate){
         if(daysLate <= 0 ){
@@ -0,0 +1,406 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+* Off-heap storage for very large catalogs, books and loans live in native memory instead of as Java objects
+* Records are fixed width and stored in pages of MemorySegments, strings are UTF-8 bytes in separate off-heap pages,
+* so the garbage collector only sees a handful of segments and int arrays however many records there are
+* Members stay on the heap, there are few of them compared to loans
+*
+* Book record (40 bytes): int id, int year, int totalCopies, int availableCopies, long title, long author, long category
+* Loan record (24 bytes): int bookIndex, int memberIndex, int loanDay, int dueDay, int returnDay, int returned
+* (strings are stored as a long reference into the string pages, -1 = null; days are epoch days)
+*
+* Records are read through reusable flyweight views (BookView, LoanView) or copied out as Book objects
+* borrow() enforces the same rules as LibManager.borrowBook: the member's limit, no second open loan of a book, a free copy
+* Needs the Foreign Function & Memory API (JDK 22+, or JDK 21 with --enable-preview), close() frees all native memory at once
+*
+* EXPERIMENTAL: nothing in the application uses this store, only OffHeapGcComparison does; it is not a backend
+* LibManager, the CLI and the CSV/journal persistence all work on the heap objects, LibManager hands out live
+* Book/Loan objects and keeps its indexes, read transactions and journal on them, and a view over a record that the
+* next at() moves elsewhere can't stand in for those
+ */
+
+public class OffHeapCatalog implements AutoCloseable {
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED;
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED;
+
+    private static final int BOOK_SIZE = 40;
+    private static final int LOAN_SIZE = 24;
+    //records per page, a page is allocated only when the previous one is full so nothing is ever copied to grow
+    private static final int RECORDS_PER_PAGE = 1 << 16;
+    private static final int STRING_PAGE_SIZE = 1 << 22;
+    private static final int LOAN_DAYS = 14;
+
+    private final Arena arena = Arena.ofShared();
+
+    private final List<MemorySegment> bookPages = new ArrayList<>();
+    private final List<MemorySegment> loanPages = new ArrayList<>();
+    private final List<MemorySegment> stringPages = new ArrayList<>();
+    private int bookCount;
+    private int loanCount;
+    private long stringEnd;
+
+    //bookId -> book index, open addressing over two int arrays (index + 1, 0 = empty)
+    private int[] idKeys = new int[1024];
+    private int[] idSlots = new int[1024];
+
+    private final List<Member> members = new ArrayList<>();
+    private final Map<Member, Integer> memberIndexes = new IdentityHashMap<>();
+    //open loans of each member by member index, for the borrow rules
+    private final List<OpenLoans> openLoans = new ArrayList<>();
+
+    //Loan indexes of one member's open loans, a member only has a few
+    private static final class OpenLoans {
+        int[] loans = new int[4];
+        int count;
+
+        void add(int loanIndex){
+            if (count == loans.length) loans = Arrays.copyOf(loans, count * 2);
+            loans[count++] = loanIndex;
+        }
+
+        void remove(int loanIndex){
+            for (int i = 0; i < count; i++){
+                if (loans[i] == loanIndex){
+                    loans[i] = loans[--count];
+                    return;
+                }
+            }
+        }
+    }
+
+    //Copies loaded rows (from ByteCsvLoader or LibrarySnapshot) into a new off-heap catalog
+    public static OffHeapCatalog from(ByteCsvLoader.Library library){
+        OffHeapCatalog catalog = new OffHeapCatalog();
+        for (Book book : library.books()) catalog.addBook(book);
+        for (Member member : library.members()) catalog.addMember(member);
+        for (Loan loan : library.loans()) catalog.addLoan(loan);
+        return catalog;
+    }
+
+    //Copies a book into a new record, returns its index
+    public synchronized int addBook(Book book){
+        if (findBook(book.getId()) >= 0){
+            throw new IllegalStateException("Book with ID " + book.getId() + " already exists");
+        }
+        int index = bookCount;
+        MemorySegment page = page(bookPages, index, BOOK_SIZE);
+        long at = offset(index, BOOK_SIZE);
+        page.set(INT, at, book.getId());
+        page.set(INT, at + 4, book.getYear());
+        page.set(INT, at + 8, book.getTotalCopies());
+        page.set(INT, at + 12, book.getAvailableCopies());
+        page.set(LONG, at + 16, putString(book.getTitle()));
+        page.set(LONG, at + 24, putString(book.getAuthor()));
+        page.set(LONG, at + 32, putString(book.getCategory()));
+        bookCount++;
+        putId(book.getId(), index);
+        return index;
+    }
+
+    //Registers a member, returns its index
+    public synchronized int addMember(Member member){
+        Integer existing = memberIndexes.get(member);
+        if (existing != null) return existing;
+        members.add(member);
+        openLoans.add(new OpenLoans());
+        memberIndexes.put(member, members.size() - 1);
+        return members.size() - 1;
+    }
+
+    //Copies a loan into a new record, its book and member must already be in the catalog
+    public synchronized int addLoan(Loan loan){
+        int bookIndex = findBook(loan.getBook().getId());
+        Integer memberIndex = memberIndexes.get(loan.getMember());
+        if (bookIndex < 0 || memberIndex == null){
+            throw new IllegalStateException("Loan refers to a book or member outside the catalog, bookId=" + loan.getBook().getId());
+        }
+        //loaded as it is, like LibManager's load the rules are not checked again
+        return appendLoan(bookIndex, memberIndex, loan.getLoanDate(), loan.getReturnDate(), loan.isReturned());
+    }
+
+    //Borrows a copy of a book to a member, checking the rules in the same order as LibManager.borrowBook
+    //Returns the new loan's index
+    public synchronized int borrow(int bookIndex, int memberIndex, LocalDate loanDate){
+        checkBook(bookIndex);
+        if (memberIndex < 0 || memberIndex >= members.size()){
+            throw new IndexOutOfBoundsException("Member index " + memberIndex + " out of bounds for " + members.size());
+        }
+        OpenLoans open = openLoans.get(memberIndex);
+        if (open.count >= members.get(memberIndex).getMaxBooksAllowed()){
+            throw new IllegalStateException("Already reached max borrow limit");
+        }
+        for (int i = 0; i < open.count; i++){
+            if (loanBook(open.loans[i]) == bookIndex){
+                throw new IllegalStateException("Member Already has this book on loan");
+            }
+        }
+        MemorySegment page = bookPages.get(bookIndex / RECORDS_PER_PAGE);
+        long at = offset(bookIndex, BOOK_SIZE) + 12;
+        int available = page.get(INT, at);
+        if (available <= 0){
+            throw new IllegalStateException("No Available copies of this book");
+        }
+        page.set(INT, at, available - 1);
+        return appendLoan(bookIndex, memberIndex, loanDate, null, false);
+    }
+
+    //Marks a loan returned and gives its copy back
+    public synchronized void returnLoan(int loanIndex, LocalDate returnDate){
+        checkLoan(loanIndex);
+        MemorySegment page = loanPages.get(loanIndex / RECORDS_PER_PAGE);
+        long at = offset(loanIndex, LOAN_SIZE);
+        if (page.get(INT, at + 20) != 0) return;
+        page.set(INT, at + 16, (int) returnDate.toEpochDay());
+        page.set(INT, at + 20, 1);
+        openLoans.get(page.get(INT, at + 4)).remove(loanIndex);
+
+        int bookIndex = page.get(INT, at);
+        MemorySegment bookPage = bookPages.get(bookIndex / RECORDS_PER_PAGE);
+        long availableAt = offset(bookIndex, BOOK_SIZE) + 12;
+        int available = bookPage.get(INT, availableAt);
+        if (available < bookPage.get(INT, availableAt - 4)){
+            bookPage.set(INT, availableAt, available + 1);
+        }
+    }
+
+    //Index of the book with an ID, -1 if there is none
+    public synchronized int findBook(int id){
+        int mask = idKeys.length - 1;
+        for (int i = mix(id) & mask; idSlots[i] != 0; i = (i + 1) & mask){
+            if (idKeys[i] == id) return idSlots[i] - 1;
+        }
+        return -1;
+    }
+
+    public synchronized int bookCount(){
+        return bookCount;
+    }
+
+    public synchronized int loanCount(){
+        return loanCount;
+    }
+
+    //Reusable view over one book record, move it with at() instead of creating an object per book
+    public BookView bookView(){
+        return new BookView();
+    }
+
+    //Reusable view over one loan record
+    public LoanView loanView(){
+        return new LoanView();
+    }
+
+    //Copies a record out as a regular Book (not linked to the record afterwards)
+    public Book toBook(int bookIndex){
+        BookView view = bookView().at(bookIndex);
+        return new Book(view.getId(), view.getTitle(), view.getAuthor(), view.getYear(), view.getCategory(),
+                view.getTotalCopies(), view.getAvailableCopies());
+    }
+
+    //Frees all native memory, views must not be used afterwards
+    @Override
+    public void close(){
+        arena.close();
+    }
+
+    public class BookView {
+        private MemorySegment page;
+        private long at;
+
+        public BookView at(int bookIndex){
+            synchronized (OffHeapCatalog.this){
+                checkBook(bookIndex);
+                page = bookPages.get(bookIndex / RECORDS_PER_PAGE);
+            }
+            at = offset(bookIndex, BOOK_SIZE);
+            return this;
+        }
+
+        public int getId(){
+            return page.get(INT, at);
+        }
+
+        public int getYear(){
+            return page.get(INT, at + 4);
+        }
+
+        public int getTotalCopies(){
+            return page.get(INT, at + 8);
+        }
+
+        public int getAvailableCopies(){
+            return page.get(INT, at + 12);
+        }
+
+        public String getTitle(){
+            return getString(page.get(LONG, at + 16));
+        }
+
+        public String getAuthor(){
+            return getString(page.get(LONG, at + 24));
+        }
+
+        public String getCategory(){
+            return getString(page.get(LONG, at + 32));
+        }
+    }
+
+    public class LoanView {
+        private MemorySegment page;
+        private long at;
+
+        public LoanView at(int loanIndex){
+            synchronized (OffHeapCatalog.this){
+                checkLoan(loanIndex);
+                page = loanPages.get(loanIndex / RECORDS_PER_PAGE);
+            }
+            at = offset(loanIndex, LOAN_SIZE);
+            return this;
+        }
+
+        public int getBookIndex(){
+            return page.get(INT, at);
+        }
+
+        public Member getMember(){
+            synchronized (OffHeapCatalog.this){
+                return members.get(page.get(INT, at + 4));
+            }
+        }
+
+        public LocalDate getLoanDate(){
+            return LocalDate.ofEpochDay(page.get(INT, at + 8));
+        }
+
+        public LocalDate getDueDate(){
+            return LocalDate.ofEpochDay(page.get(INT, at + 12));
+        }
+
+        public boolean isReturned(){
+            return page.get(INT, at + 20) != 0;
+        }
+
+        public LocalDate getReturnDate(){
+            return isReturned() && page.get(INT, at + 16) != Integer.MIN_VALUE
+                    ? LocalDate.ofEpochDay(page.get(INT, at + 16)) : null;
+        }
+    }
+
+    private int appendLoan(int bookIndex, int memberIndex, LocalDate loanDate, LocalDate returnDate, boolean returned){
+        int index = loanCount;
+        MemorySegment page = page(loanPages, index, LOAN_SIZE);
+        long at = offset(index, LOAN_SIZE);
+        page.set(INT, at, bookIndex);
+        page.set(INT, at + 4, memberIndex);
+        page.set(INT, at + 8, (int) loanDate.toEpochDay());
+        page.set(INT, at + 12, (int) loanDate.plusDays(LOAN_DAYS).toEpochDay());
+        page.set(INT, at + 16, returnDate == null ? Integer.MIN_VALUE : (int) returnDate.toEpochDay());
+        page.set(INT, at + 20, returned ? 1 : 0);
+        loanCount++;
+        if (!returned) openLoans.get(memberIndex).add(index);
+        return index;
+    }
+
+    private int loanBook(int loanIndex){
+        return loanPages.get(loanIndex / RECORDS_PER_PAGE).get(INT, offset(loanIndex, LOAN_SIZE));
+    }
+
+    //The page holding a record, allocating it when the record is the first one on a new page
+    private MemorySegment page(List<MemorySegment> pages, int index, int recordSize){
+        int pageIndex = index / RECORDS_PER_PAGE;
+        if (pageIndex == pages.size()){
+            pages.add(arena.allocate((long) RECORDS_PER_PAGE * recordSize, 8));
+        }
+        return pages.get(pageIndex);
+    }
+
+    private static long offset(int index, int recordSize){
+        return (long) (index % RECORDS_PER_PAGE) * recordSize;
+    }
+
+    //Stores a string as an int length and its UTF-8 bytes, returns page * STRING_PAGE_SIZE + offset
+    private long putString(String value){
+        if (value == null) return -1;
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int needed = 4 + bytes.length;
+        if (needed > STRING_PAGE_SIZE){
+            throw new IllegalArgumentException("String longer than " + (STRING_PAGE_SIZE - 4) + " bytes");
+        }
+
+        //a string never straddles two pages
+        long inPage = stringEnd % STRING_PAGE_SIZE;
+        if (stringPages.isEmpty() || inPage + needed > STRING_PAGE_SIZE){
+            stringPages.add(arena.allocate(STRING_PAGE_SIZE, 8));
+            stringEnd = (long) (stringPages.size() - 1) * STRING_PAGE_SIZE;
+            inPage = 0;
+        }
+        MemorySegment page = stringPages.get(stringPages.size() - 1);
+        page.set(INT, inPage, bytes.length);
+        MemorySegment.copy(MemorySegment.ofArray(bytes), 0, page, inPage + 4, bytes.length);
+
+        long ref = stringEnd;
+        stringEnd += needed;
+        return ref;
+    }
+
+    private String getString(long ref){
+        if (ref < 0) return null;
+        MemorySegment page;
+        synchronized (this){
+            page = stringPages.get((int) (ref / STRING_PAGE_SIZE));
+        }
+        long at = ref % STRING_PAGE_SIZE;
+        int length = page.get(INT, at);
+        byte[] bytes = page.asSlice(at + 4, length).toArray(ValueLayout.JAVA_BYTE);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void putId(int id, int index){
+        if (bookCount * 2 > idKeys.length){
+            int[] oldKeys = idKeys;
+            int[] oldSlots = idSlots;
+            idKeys = new int[oldKeys.length * 2];
+            idSlots = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++){
+                if (oldSlots[i] != 0) insertId(oldKeys[i], oldSlots[i]);
+            }
+        }
+        insertId(id, index + 1);
+    }
+
+    private void insertId(int id, int slot){
+        int mask = idKeys.length - 1;
+        int i = mix(id) & mask;
+        while (idSlots[i] != 0) i = (i + 1) & mask;
+        idKeys[i] = id;
+        idSlots[i] = slot;
+    }
+
+    private static int mix(int id){
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void checkBook(int bookIndex){
+        if (bookIndex < 0 || bookIndex >= bookCount){
+            throw new IndexOutOfBoundsException("Book index " + bookIndex + " out of bounds for " + bookCount);
+        }
+    }
+
+    private void checkLoan(int loanIndex){
+        if (loanIndex < 0 || loanIndex >= loanCount){
+            throw new IndexOutOfBoundsException("Loan index " + loanIndex + " out of bounds for " + loanCount);
+        }
+    }
+}
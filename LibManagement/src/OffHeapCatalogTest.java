@@ -0,0 +1,71 @@
+import org.junit.jupiter.api.Test;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapCatalogTest {
+
+    //Testing that records read back through the views and borrow/return keep the copy counts right
+    @Test
+    void records_readBackThroughViews() {
+        try (OffHeapCatalog catalog = new OffHeapCatalog()) {
+            Member member = new Member("A", "M1", "a@test.com", 123);
+            int m = catalog.addMember(member);
+            for (int i = 0; i < 70000; i++) {
+                catalog.addBook(new Book(i * 2 + 1, "Title " + i, "Author " + (i % 50), 2000 + i % 20, "Çategory", 2));
+            }
+
+            int index = catalog.findBook(2 * 66000 + 1);
+            assertEquals(66000, index);
+            OffHeapCatalog.BookView view = catalog.bookView().at(index);
+            assertEquals("Title 66000", view.getTitle());
+            assertEquals("Author 0", view.getAuthor());
+            assertEquals("Çategory", view.getCategory());
+            assertEquals(-1, catalog.findBook(4));
+
+            int loan = catalog.borrow(index, m, LocalDate.of(2025, 1, 1));
+            assertEquals(1, view.getAvailableCopies());
+            OffHeapCatalog.LoanView loanView = catalog.loanView().at(loan);
+            assertEquals(LocalDate.of(2025, 1, 15), loanView.getDueDate());
+            assertSame(member, loanView.getMember());
+            assertFalse(loanView.isReturned());
+
+            catalog.returnLoan(loan, LocalDate.of(2025, 1, 10));
+            assertTrue(loanView.isReturned());
+            assertEquals(LocalDate.of(2025, 1, 10), loanView.getReturnDate());
+            assertEquals(2, view.getAvailableCopies());
+            assertEquals("Title 66000", catalog.toBook(index).getTitle());
+
+            assertThrows(IllegalStateException.class, () -> catalog.addBook(new Book(1, "Dup", "A", 2000, "C", 1)));
+        }
+    }
+
+    //Testing that borrow enforces the member's limit, one open loan per book and a free copy, like LibManager
+    @Test
+    void borrow_enforcesBorrowingRules() {
+        try (OffHeapCatalog catalog = new OffHeapCatalog()) {
+            int m = catalog.addMember(new Member("A", "M1", "a@test.com", 1, 2));
+            int other = catalog.addMember(new Member("B", "M2", "b@test.com", 2, 5));
+            int dune = catalog.addBook(new Book(1, "Dune", "Herbert", 1965, "SciFi", 1));
+            int emma = catalog.addBook(new Book(2, "Emma", "Austen", 1815, "Classic", 2));
+            int ulysses = catalog.addBook(new Book(3, "Ulysses", "Joyce", 1922, "Classic", 2));
+            LocalDate day = LocalDate.of(2025, 1, 1);
+
+            int first = catalog.borrow(emma, m, day);
+            Exception e = assertThrows(IllegalStateException.class, () -> catalog.borrow(emma, m, day));
+            assertEquals("Member Already has this book on loan", e.getMessage());
+            catalog.borrow(dune, m, day);
+            e = assertThrows(IllegalStateException.class, () -> catalog.borrow(ulysses, m, day));
+            assertEquals("Already reached max borrow limit", e.getMessage());
+            e = assertThrows(IllegalStateException.class, () -> catalog.borrow(dune, other, day));
+            assertEquals("No Available copies of this book", e.getMessage());
+            //a refused borrow takes no copy
+            assertEquals(2, catalog.bookView().at(ulysses).getAvailableCopies());
+
+            //a return frees the slot and the book
+            catalog.returnLoan(first, day.plusDays(3));
+            catalog.borrow(emma, m, day.plusDays(4));
+            assertEquals(3, catalog.loanCount());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+* Compares GC cost and heap occupancy of the ArrayList-of-objects layout against OffHeapCatalog
+*   OffHeapGcComparison heap|offheap [loans]   (default 10,000,000 loans)
+* Run each mode in its own JVM with the same -Xmx and collector, e.g. java -Xmx8g OffHeapGcComparison heap
+* (on JDK 21 compile and run with --enable-preview)
+ */
+
+public class OffHeapGcComparison {
+
+    private static final int BOOKS = 100_000;
+    private static final int MEMBERS = 50_000;
+    private static final int FULL_GCS = 5;
+
+    //keeps the data reachable while the collections run
+    private static Object live;
+
+    public static void main(String[] args){
+        boolean offHeap = args.length > 0 && args[0].equals("offheap");
+        int loanCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < MEMBERS; i++){
+            members.add(new Member("Member " + i, "M" + i, "m" + i + "@test.com", i, Integer.MAX_VALUE));
+        }
+        LocalDate start = LocalDate.of(2020, 1, 1);
+
+        long buildStart = System.nanoTime();
+        if (offHeap){
+            OffHeapCatalog catalog = new OffHeapCatalog();
+            for (int i = 0; i < BOOKS; i++){
+                catalog.addBook(new Book(i, "Title " + i, "Author " + i % 5000, 2000, "Fiction", Integer.MAX_VALUE));
+            }
+            for (Member member : members) catalog.addMember(member);
+            for (int i = 0; i < loanCount; i++){
+                catalog.borrow(bookOf(i), i % MEMBERS, start.plusDays(i % 1500));
+            }
+            live = catalog;
+        } else {
+            List<Book> books = new ArrayList<>();
+            for (int i = 0; i < BOOKS; i++){
+                books.add(new Book(i, "Title " + i, "Author " + i % 5000, 2000, "Fiction", Integer.MAX_VALUE));
+            }
+            List<Loan> loans = new ArrayList<>();
+            for (int i = 0; i < loanCount; i++){
+                Book book = books.get(bookOf(i));
+                book.borrowCopy();
+                loans.add(new Loan(book, members.get(i % MEMBERS), start.plusDays(i % 1500)));
+            }
+            live = loans;
+        }
+        System.out.println((offHeap ? "off-heap" : "heap objects") + ": " + loanCount + " loans built in "
+                + (System.nanoTime() - buildStart) / 1_000_000 + " ms");
+
+        //full collections with everything live, their cost grows with the number of objects to trace
+        long[] before = gcTotals();
+        for (int i = 0; i < FULL_GCS; i++){
+            System.gc();
+        }
+        long[] after = gcTotals();
+
+        Runtime runtime = Runtime.getRuntime();
+        System.out.println("heap used after GC: " + (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024) + " MiB");
+        System.out.println("GC time for " + FULL_GCS + " full collections: " + (after[1] - before[1]) + " ms ("
+                + (after[0] - before[0]) + " collections)");
+    }
+
+    //Book of the i-th loan, a member gets a different book on every loan since borrow refuses a second open loan of one
+    private static int bookOf(int i){
+        return (i / MEMBERS) % BOOKS;
+    }
+
+    //Total collection count and time over all collectors
+    private static long[] gcTotals(){
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+            count += Math.max(0, gc.getCollectionCount());
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{count, millis};
+    }
+}
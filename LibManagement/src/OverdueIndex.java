@@ -0,0 +1,96 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+* Open loans ordered by due date (epoch-day), so overdue and due-soon questions read one range of a skip list
+* instead of checking every loan; cost is O(log n) plus the loans in the answer
+* A second skip list holds the loans not announced yet: advanceTo(day) pops the ones that went overdue since the
+* last run and tells the listeners, each loan is announced once, including loans added with a due date already past
+ */
+
+public class OverdueIndex {
+
+    //Told once about every loan that goes overdue, on the thread calling advanceTo
+    public interface Listener {
+        void onOverdue(Loan loan, LocalDate asOf);
+    }
+
+    //Due day, then the order loans were added in so two loans due the same day are never equal
+    record Key(long dueDay, long seq) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other){
+            int c = Long.compare(dueDay, other.dueDay);
+            return c != 0 ? c : Long.compare(seq, other.seq);
+        }
+    }
+
+    private final ConcurrentSkipListMap<Key, Loan> byDue = new ConcurrentSkipListMap<>();
+    //loans not announced as overdue yet
+    private final ConcurrentSkipListMap<Key, Loan> unannounced = new ConcurrentSkipListMap<>();
+    private final Map<Loan, Key> keys = new ConcurrentHashMap<>();
+    private final AtomicLong seq = new AtomicLong();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    //Adds an open loan
+    public void add(Loan loan){
+        Key key = new Key(loan.getDueDate().toEpochDay(), seq.getAndIncrement());
+        keys.put(loan, key);
+        byDue.put(key, loan);
+        unannounced.put(key, loan);
+    }
+
+    //Removes a loan once it is returned
+    public void remove(Loan loan){
+        Key key = keys.remove(loan);
+        if (key == null) return;
+        byDue.remove(key);
+        unannounced.remove(key);
+    }
+
+    //Open loans that are overdue on the given date (due before it), most overdue first
+    public List<Loan> overdueAsOf(LocalDate date){
+        return new ArrayList<>(byDue.headMap(new Key(date.toEpochDay(), Long.MIN_VALUE)).values());
+    }
+
+    //Open loans due between from and from + days (both included), earliest first
+    public List<Loan> dueWithin(LocalDate from, int days){
+        if (days < 0){
+            throw new IllegalArgumentException("Days must not be negative");
+        }
+        Key start = new Key(from.toEpochDay(), Long.MIN_VALUE);
+        Key end = new Key(from.toEpochDay() + days + 1, Long.MIN_VALUE);
+        return new ArrayList<>(byDue.subMap(start, end).values());
+    }
+
+    public void addListener(Listener listener){
+        listeners.add(listener);
+    }
+
+    //Announces every loan overdue on the given date that wasn't announced yet, returns how many
+    //Only those loans are visited, so a daily run costs the loans that went overdue since the previous one
+    public int advanceTo(LocalDate today){
+        Key cutoff = new Key(today.toEpochDay(), Long.MIN_VALUE);
+        int announced = 0;
+        for (Map.Entry<Key, Loan> entry; (entry = unannounced.firstEntry()) != null && entry.getKey().compareTo(cutoff) < 0; ){
+            //remove() decides the race with a concurrent return or advanceTo, only the caller that removed it announces
+            if (unannounced.remove(entry.getKey(), entry.getValue())){
+                for (Listener listener : listeners){
+                    listener.onOverdue(entry.getValue(), today);
+                }
+                announced++;
+            }
+        }
+        return announced;
+    }
+
+    //Number of open loans
+    public int size(){
+        return byDue.size();
+    }
+}
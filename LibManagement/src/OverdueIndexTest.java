@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.Test;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OverdueIndexTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 1);
+
+    private static Loan loanDueOn(LocalDate due, int id) {
+        //loans are due 14 days after they are made
+        return new Loan(new Book(id, "T" + id, "A", 2000, "C", 1),
+                new Member("M" + id, "M" + id, "m@test.com", id, 5), due.minusDays(14));
+    }
+
+    //Testing the overdue and due-soon queries, each returns only its due-date range in due order
+    @Test
+    void queries_readOnlyTheDueDateRange() {
+        OverdueIndex index = new OverdueIndex();
+        Loan early = loanDueOn(DAY.minusDays(3), 1);
+        Loan yesterday = loanDueOn(DAY.minusDays(1), 2);
+        Loan today = loanDueOn(DAY, 3);
+        Loan inAWeek = loanDueOn(DAY.plusDays(7), 4);
+        index.add(inAWeek);
+        index.add(today);
+        index.add(early);
+        index.add(yesterday);
+
+        assertEquals(List.of(early, yesterday), index.overdueAsOf(DAY));
+        assertEquals(List.of(today), index.dueWithin(DAY, 6));
+        assertEquals(List.of(today, inAWeek), index.dueWithin(DAY, 7));
+
+        index.remove(early);
+        assertEquals(List.of(yesterday), index.overdueAsOf(DAY));
+        assertEquals(3, index.size());
+    }
+
+    //Testing that advancing the clock announces each overdue loan once, skipping loans returned before it went overdue
+    @Test
+    void advanceTo_announcesEachLoanOnce_andSkipsReturnedOnes() {
+        OverdueIndex index = new OverdueIndex();
+        List<Loan> announced = new ArrayList<>();
+        index.addListener((loan, asOf) -> announced.add(loan));
+        Loan first = loanDueOn(DAY, 1);
+        Loan second = loanDueOn(DAY.plusDays(2), 2);
+        Loan returned = loanDueOn(DAY.plusDays(1), 3);
+        index.add(first);
+        index.add(second);
+        index.add(returned);
+
+        assertEquals(0, index.advanceTo(DAY));
+        assertEquals(1, index.advanceTo(DAY.plusDays(1)));
+        index.remove(returned);
+        assertEquals(0, index.advanceTo(DAY.plusDays(2)));
+
+        //added after the clock passed its due date, announced on the next run
+        Loan late = loanDueOn(DAY.minusDays(10), 4);
+        index.add(late);
+        assertEquals(2, index.advanceTo(DAY.plusDays(5)));
+        assertEquals(List.of(first, late, second), announced);
+    }
+
+    //Testing that the manager only keeps open loans in the index: a returned loan is never reported overdue
+    @Test
+    void manager_keepsOnlyOpenLoansInTheIndex() {
+        LibManager manager = new LibManager();
+        Book book = new Book(1, "Dune", "Herbert", 1965, "SciFi", 2);
+        Member member = new Member("A", "M1", "a@test.com", 1, 5);
+        manager.addBook(book);
+        manager.addMember(member);
+        manager.borrowBook(member, book, DAY);
+        manager.returnBook(member, book, DAY.plusDays(1));
+        manager.borrowBook(member, book, DAY.plusDays(2));
+
+        assertTrue(manager.getOverdueLoans(DAY.plusDays(16)).isEmpty());
+        assertEquals(1, manager.getOverdueLoans(DAY.plusDays(17)).size());
+        assertEquals(1, manager.getLoansDueWithin(DAY.plusDays(10), 6).size());
+        assertEquals(1, manager.advanceDate(DAY.plusDays(30)));
+    }
+}
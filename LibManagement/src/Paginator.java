@@ -1,7 +1,11 @@
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 //<T> means it works with any type, not just books
+//Lazy mode (with a comparator) sorts only as far as the pages asked for: the next rows are picked with quickselect
+//and only those are sorted, so the first page costs about O(n + k log k) instead of sorting everything
 public class Paginator<T> {
 
     //Full list of items ----Search results
@@ -10,10 +14,26 @@ public class Paginator<T> {
     //Number of items shown per page
     private final int pageSize;
 
+    //Lazy mode: order to page in (null = items are already in order)
+    private final Comparator<? super T> comparator;
+    //Lazy mode: positions into items, [0, sortedPrefix) is in final order and everything after it comes later
+    private int[] order;
+    private int sortedPrefix;
+
     //Stores the list and chosen page size
     public Paginator(List<T> items, int pageSize) {
+        this(items, pageSize, null);
+    }
+
+    //Pages an unsorted list in comparator order, equal items keep their list order (same pages as a stable sort)
+    public Paginator(List<T> items, int pageSize, Comparator<? super T> comparator) {
         this.items = items;
         this.pageSize = pageSize;
+        this.comparator = comparator;
+        if (comparator != null) {
+            order = new int[items.size()];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+        }
     }
 
     //Calculates the total number of pages needed
@@ -28,6 +48,86 @@ public class Paginator<T> {
         if (start >= items.size()) return Collections.emptyList();
 
         int end = Math.min(start + pageSize, items.size());
-        return items.subList(start, end);
+        if (comparator == null) return items.subList(start, end);
+
+        extendSortedPrefix(end);
+        List<T> page = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) page.add(items.get(order[i]));
+        return page;
+    }
+
+    //Brings the first `end` positions into final order, the rows before sortedPrefix are already done
+    private void extendSortedPrefix(int end) {
+        if (end <= sortedPrefix) return;
+        //everything in [end, n) is no smaller than what ends up in [sortedPrefix, end)
+        select(sortedPrefix, order.length, end);
+        sort(sortedPrefix, end);
+        sortedPrefix = end;
+    }
+
+    //Comparator order, ties broken by list position so no two positions are equal
+    private int compare(int a, int b) {
+        int c = comparator.compare(items.get(a), items.get(b));
+        return c != 0 ? c : Integer.compare(a, b);
+    }
+
+    //Quickselect: rearranges [lo, hi) so the positions in [lo, k) are the smallest ones
+    private void select(int lo, int hi, int k) {
+        while (hi - lo > 1) {
+            int p = partition(lo, hi);
+            if (p == k || p == k - 1) return;
+            if (p < k) lo = p + 1;
+            else hi = p;
+        }
+    }
+
+    //Quicksort of [lo, hi), small ranges by insertion sort
+    //Written out instead of List.sort so a comparator that changes mid-sort (live availability) can't make it throw
+    private void sort(int lo, int hi) {
+        while (hi - lo > 16) {
+            int p = partition(lo, hi);
+            //recurse into the smaller side, loop on the larger one
+            if (p - lo < hi - p) {
+                sort(lo, p);
+                lo = p + 1;
+            } else {
+                sort(p + 1, hi);
+                hi = p;
+            }
+        }
+        for (int i = lo + 1; i < hi; i++) {
+            int x = order[i];
+            int j = i - 1;
+            while (j >= lo && compare(order[j], x) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = x;
+        }
+    }
+
+    //Partitions [lo, hi) around a median-of-three pivot, returns the pivot's final index
+    private int partition(int lo, int hi) {
+        int mid = (lo + hi) >>> 1;
+        int last = hi - 1;
+        if (compare(order[mid], order[lo]) < 0) swap(mid, lo);
+        if (compare(order[last], order[lo]) < 0) swap(last, lo);
+        if (compare(order[last], order[mid]) < 0) swap(last, mid);
+        //median goes to the end as the pivot
+        swap(mid, last);
+
+        int pivot = order[last];
+        int store = lo;
+        for (int i = lo; i < last; i++) {
+            if (compare(order[i], pivot) < 0) swap(i, store++);
+        }
+        swap(store, last);
+        return store;
+    }
+
+    private void swap(int i, int j) {
+        int t = order[i];
+        order[i] = order[j];
+        order[j] = t;
     }
 }
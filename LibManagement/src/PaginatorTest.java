@@ -0,0 +1,44 @@
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaginatorTest {
+
+    //Testing that lazy pages, asked for in any order, are the pages of a stable full sort
+    @Test
+    void lazyPages_matchStableSort() {
+        Random random = new Random(3);
+        List<int[]> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(new int[]{random.nextInt(40), i});
+        }
+        Comparator<int[]> byValue = Comparator.comparingInt(a -> a[0]);
+
+        List<int[]> sorted = new ArrayList<>(items);
+        sorted.sort(byValue);
+        Paginator<int[]> expected = new Paginator<>(sorted, 30);
+        Paginator<int[]> lazy = new Paginator<>(items, 30, byValue);
+
+        assertEquals(34, lazy.totalPages());
+        for (int page : new int[]{0, 1, 5, 2, 33, 0, 20, 34}) {
+            assertEquals(expected.getPage(page), lazy.getPage(page));
+        }
+    }
+
+    //Testing that the source list is left as it was and a missing comparator keeps its order
+    @Test
+    void lazyMode_leavesSourceUntouched() {
+        List<String> items = new ArrayList<>(List.of("d", "b", "a", "c", "e"));
+        Paginator<String> lazy = new Paginator<>(items, 2, Comparator.naturalOrder());
+        assertEquals(List.of("a", "b"), lazy.getPage(0));
+        assertEquals(List.of("e"), lazy.getPage(2));
+        assertEquals(List.of("d", "b", "a", "c", "e"), items);
+
+        assertEquals(List.of("d", "b"), new Paginator<>(items, 2).getPage(0));
+        assertTrue(new Paginator<>(new ArrayList<String>(), 2, Comparator.naturalOrder()).getPage(0).isEmpty());
+    }
+}
@@ -0,0 +1,64 @@
+import java.util.Arrays;
+
+/*
+* Growable list of book ordinals used by the search indexes
+* Ordinals are always added in ascending order so two lists can be intersected with a single merge pass
+ */
+
+public class PostingList {
+
+    private int[] data = new int[4];
+    private int size;
+
+    //Adds an ordinal, ignoring it when it is the same as the last one so a book is only posted once
+    public void add(int ordinal){
+        if (size > 0 && data[size - 1] == ordinal) return;
+        if (size == data.length){
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = ordinal;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public int get(int index){
+        if (index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return data[index];
+    }
+
+    //Returns a copy of the ordinals
+    public int[] toArray(){
+        return Arrays.copyOf(data, size);
+    }
+
+    //Keeps only the values of result[0..count) that are also in this list and returns the new count
+    public int retainIn(int[] result, int count){
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < size; i++){
+            int value = result[i];
+            while (j < size && data[j] < value) j++;
+            if (j < size && data[j] == value){
+                result[kept++] = value;
+            }
+        }
+        return kept;
+    }
+
+    //Intersects posting lists, starting from the shortest so the work is bounded by the rarest entry
+    public static int[] intersect(PostingList[] lists){
+        if (lists.length == 0) return new int[0];
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        int[] result = lists[0].toArray();
+        int count = result.length;
+        for (int i = 1; i < lists.length && count > 0; i++){
+            count = lists[i].retainIn(result, count);
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+* Point-in-time view of the library for reports that read several things at once
+* Opened with LibManager.beginRead(), everything it returns is as of one committed version: the books, members and
+* loans that existed then, each book's available copies and which loans were still open
+* Opening and reading take no lock, so borrows/returns keep committing meanwhile; close it so old versions can be dropped
+* The Book/Loan objects are the live ones, read their versioned state through getAvailableCopies/isReturned
+ */
+
+public class ReadTransaction implements AutoCloseable {
+
+    private final VersionManager versions;
+    private final VersionManager.Published at;
+    private final List<Book> books;
+    private final List<Member> members;
+    private final List<Loan> loans;
+    private boolean closed;
+
+    ReadTransaction(VersionManager versions, VersionManager.Published at){
+        this.versions = versions;
+        this.at = at;
+        this.books = at.books();
+        this.members = at.members();
+        this.loans = at.loans();
+    }
+
+    //Version this transaction reads at
+    public long version(){
+        return at.version();
+    }
+
+    public List<Book> getBooks(){
+        checkOpen();
+        return books;
+    }
+
+    public List<Member> getMembers(){
+        checkOpen();
+        return members;
+    }
+
+    //Every loan in the hot list at this version, returned or not (loans archived to LoanHistory are not in it)
+    public List<Loan> getLoans(){
+        checkOpen();
+        return loans;
+    }
+
+    //Loans that were open at this version
+    public List<Loan> getActiveLoans(){
+        checkOpen();
+        List<Loan> active = new ArrayList<>();
+        for (Loan loan : loans){
+            if (!isReturned(loan)) active.add(loan);
+        }
+        return active;
+    }
+
+    //Available copies of a book at this version
+    public int getAvailableCopies(Book book){
+        checkOpen();
+        Integer available = versions.availableAt(book, at.version());
+        if (available == null){
+            throw new IllegalStateException("Book " + book.getId() + " did not exist at version " + at.version());
+        }
+        return available;
+    }
+
+    //Whether a loan had been returned at this version
+    public boolean isReturned(Loan loan){
+        checkOpen();
+        return loan.returnedVersion <= at.version();
+    }
+
+    //Releases the version, later reads throw
+    @Override
+    public void close(){
+        if (!closed){
+            closed = true;
+            versions.closeRead(at.version());
+        }
+    }
+
+    private void checkOpen(){
+        if (closed){
+            throw new IllegalStateException("Read transaction is closed");
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/*
+* A search keyword normalized once per search so matching each book needs no allocation
+* Text is folded by stripping diacritics (ü -> u) and Unicode case folding (ß -> ss), Books cache their fields folded the same way
+ */
+
+public class SearchQuery {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    //matches nothing, used for a null keyword
+    private static final SearchQuery NONE = new SearchQuery(null, null);
+
+    private final String keyword;
+    private final String folded;
+
+    private SearchQuery(String keyword, String folded) {
+        this.keyword = keyword;
+        this.folded = folded;
+    }
+
+    //Compiles a keyword into a query, a null keyword gives a query that matches nothing
+    public static SearchQuery compile(String keyword) {
+        if (keyword == null) return NONE;
+        return new SearchQuery(keyword, fold(keyword));
+    }
+
+    //Folds text for matching: decomposes accented letters, drops the accents, then folds case
+    //Returns null for null so books with a missing field never match
+    public static String fold(String text) {
+        if (text == null) return null;
+
+        String stripped = text;
+        if (!Normalizer.isNormalized(text, Normalizer.Form.NFD) || hasCombiningMark(text)) {
+            stripped = COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        }
+        //upper then lower case folds special cases like ß -> SS -> ss
+        return stripped.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+
+    //Checks one already-folded field, String.contains does not allocate
+    public boolean matchesFolded(String foldedText) {
+        return folded != null && foldedText != null && foldedText.contains(folded);
+    }
+
+    //The keyword as typed
+    public String getKeyword() {
+        return keyword;
+    }
+
+    //The folded keyword, null when the query matches nothing
+    public String getFolded() {
+        return folded;
+    }
+
+    private static boolean hasCombiningMark(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.getType(text.charAt(i)) == Character.NON_SPACING_MARK) return true;
+        }
+        return false;
+    }
+}
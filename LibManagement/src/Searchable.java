@@ -1,4 +1,9 @@
 
 public interface Searchable {
     boolean matches(String keyword);
+
+    //Matches a keyword compiled once per search, implementations should not allocate here
+    default boolean matches(SearchQuery query) {
+        return matches(query.getKeyword());
+    }
 }
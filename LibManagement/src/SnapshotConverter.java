@@ -0,0 +1,43 @@
+import java.io.IOException;
+
+/*
+* Command line converter between the CSV files and a binary snapshot
+*   SnapshotConverter to-snapshot <books.csv> <members.csv> <loans.csv> <snapshot>
+*   SnapshotConverter to-csv <snapshot> <books.csv> <members.csv> <loans.csv>
+ */
+
+public class SnapshotConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 5 && args[0].equals("to-snapshot")) {
+            toSnapshot(args[1], args[2], args[3], args[4]);
+            System.out.println("Snapshot written to " + args[4]);
+        } else if (args.length == 5 && args[0].equals("to-csv")) {
+            toCsv(args[1], args[2], args[3], args[4]);
+            System.out.println("CSV files written from " + args[1]);
+        } else {
+            System.out.println("Usage: SnapshotConverter to-snapshot <books.csv> <members.csv> <loans.csv> <snapshot>");
+            System.out.println("       SnapshotConverter to-csv <snapshot> <books.csv> <members.csv> <loans.csv>");
+        }
+    }
+
+    //Loads the CSV files (with their delta segments) and writes them as a snapshot stamped with those files
+    public static void toSnapshot(String booksPath, String membersPath, String loansPath, String snapshotPath) throws IOException {
+        CsvSaver.recoverMerge(booksPath, loansPath);
+        int deltaSeq = LibrarySnapshot.latestDeltaSeq(booksPath, loansPath);
+        long stamp = LibrarySnapshot.sourceStamp(booksPath, membersPath, loansPath, deltaSeq);
+        LibrarySnapshot.write(snapshotPath, ByteCsvLoader.loadLibrary(booksPath, membersPath, loansPath, deltaSeq), stamp, deltaSeq);
+    }
+
+    //Writes the rows of a snapshot as full CSV base files
+    //Delta segments of the old files would be applied on top of the new bases, so they must not exist
+    public static void toCsv(String snapshotPath, String booksPath, String membersPath, String loansPath) throws IOException {
+        if (!CsvSaver.deltaSeqs(booksPath).isEmpty() || !CsvSaver.deltaSeqs(loansPath).isEmpty()) {
+            throw new IllegalStateException("Delta segments exist next to the target CSV files, merge or remove them first");
+        }
+        ByteCsvLoader.Library library = LibrarySnapshot.read(snapshotPath);
+        CsvSaver.saveBooks(booksPath, library.books());
+        CsvSaver.saveMembers(membersPath, library.members());
+        CsvSaver.saveLoans(loansPath, library.loans());
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+* Dictionary for string columns that repeat across rows (categories, authors, departments)
+* Every distinct value gets one canonical String instance and a small int code, so repeated values share memory
+* and columns can store/compare the code instead of the string
+* Safe to use from several threads, codes are never reused or changed
+* Each LibManager owns one (the loaders intern with it too), so it is dropped together with the library it was built for
+ */
+
+public class StringDictionary {
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    //code -> value, replaced (never modified in place below size) when it grows
+    private volatile String[] values = new String[64];
+    private int size;
+
+    //Returns the code of a value, giving it the next free code the first time it is seen (null is -1)
+    public int encode(String value){
+        if (value == null) return -1;
+        Integer code = codes.get(value);
+        if (code != null) return code;
+
+        synchronized (this){
+            code = codes.get(value);
+            if (code != null) return code;
+            if (size == values.length){
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size] = value;
+            code = size++;
+            //published after the array slot, so whoever reads the code can also read the value
+            codes.put(value, code);
+            return code;
+        }
+    }
+
+    //Returns the code of a value without adding it, -1 if it was never encoded
+    public int lookup(String value){
+        if (value == null) return -1;
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    //Returns the value of a code (null for -1)
+    public String decode(int code){
+        return code < 0 ? null : values[code];
+    }
+
+    //Returns the canonical instance equal to the value
+    public String intern(String value){
+        return value == null ? null : decode(encode(value));
+    }
+
+    //Number of distinct values
+    public int size(){
+        return codes.size();
+    }
+}
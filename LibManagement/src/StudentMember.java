@@ -24,6 +24,12 @@ public class StudentMember extends Member {
         return 2.5 * daysLate;
     }
 
+    //Departments repeat across students, they share one instance per department
+    @Override
+    void internStrings(StringDictionary dictionary){
+        this.department = dictionary.intern(department);
+    }
+
     //Getters
     public String getStuID(){
         return stuID;
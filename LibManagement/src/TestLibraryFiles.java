@@ -0,0 +1,25 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+* Shared fixture of the tests that load a library from files
+* Writes books.csv, members.csv and loans.csv into a folder (the test's @TempDir), each test passes its own rows
+ */
+
+class TestLibraryFiles {
+
+    static final String BOOKS_HEADER = "id,title,author,year,category,totalCopies,availableCopies\n";
+    static final String MEMBERS_HEADER = "type,memberId,name,email,number,maxBooksAllowed,studentId,department\n";
+    static final String LOANS_HEADER = "bookId,memberId,loanDate,dueDate,returnDate,returned\n";
+
+    private TestLibraryFiles() {}
+
+    //Writes the three files, the rows go after each file's header line; returns the folder
+    static Path write(Path dir, String books, String members, String loans) throws IOException {
+        Files.writeString(dir.resolve("books.csv"), BOOKS_HEADER + books);
+        Files.writeString(dir.resolve("members.csv"), MEMBERS_HEADER + members);
+        Files.writeString(dir.resolve("loans.csv"), LOANS_HEADER + loans);
+        return dir;
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.*;
+
+/*
+* Inverted word index over the title, author and category of books
+* Every book gets an ordinal (the order it was added in), each folded word maps to the sorted ordinals of the books containing it
+* A whole-word search intersects those lists instead of checking every book
+ */
+
+public class TokenIndex {
+
+    //word -> ordinals of the books that contain it, always in ascending order
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private int size;
+
+    //Indexes the next book, its ordinal is the number of books indexed before it
+    public void add(Book book){
+        int ordinal = size++;
+        for (String field : new String[]{book.getSearchTitle(), book.getSearchAuthor(), book.getSearchCategory()}){
+            for (String token : tokenize(field)){
+                //PostingList drops a repeat of the last ordinal, so a word repeated in a book is only posted once
+                postings.computeIfAbsent(token, t -> new PostingList()).add(ordinal);
+            }
+        }
+    }
+
+    //Returns the ordinals of the books containing every word in the query, in the order they were added
+    public int[] search(String query){
+        List<String> tokens = tokenize(SearchQuery.fold(query));
+        if (tokens.isEmpty()) return new int[0];
+
+        PostingList[] lists = new PostingList[tokens.size()];
+        for (int i = 0; i < lists.length; i++){
+            lists[i] = postings.get(tokens.get(i));
+            if (lists[i] == null) return new int[0];
+        }
+        return PostingList.intersect(lists);
+    }
+
+    //Number of books that have been indexed
+    public int size(){
+        return size;
+    }
+
+    //Splits folded text into words made of letters and digits
+    static List<String> tokenize(String text){
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+
+        StringBuilder cur = new StringBuilder();
+        for (int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)){
+                cur.append(c);
+            } else if (cur.length() > 0){
+                tokens.add(cur.toString());
+                cur.setLength(0);
+            }
+        }
+        if (cur.length() > 0) tokens.add(cur.toString());
+        return tokens;
+    }
+}
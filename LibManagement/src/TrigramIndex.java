@@ -0,0 +1,66 @@
+import java.util.*;
+
+/*
+* N-gram index that keeps substring search exact without checking every book
+* Each folded title, author and category (see SearchQuery.fold) is cut into all of its 1, 2 and 3 character pieces, each piece maps to the ordinals of the books containing it
+* Longer keywords use the intersection of their trigrams as candidates, which the caller confirms with Searchable.matches
+ */
+
+public class TrigramIndex {
+
+    private static final int GRAM = 3;
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private int size;
+
+    //Indexes the next book, its ordinal is the number of books indexed before it
+    public void add(Book book){
+        int ordinal = size++;
+        //the cached folded fields are what Book.matches compares against, so every match of the keyword is a match of its grams
+        for (String text : new String[]{book.getSearchTitle(), book.getSearchAuthor(), book.getSearchCategory()}){
+            if (text == null) continue;
+
+            for (int start = 0; start < text.length(); start++){
+                int maxEnd = Math.min(start + GRAM, text.length());
+                for (int end = start + 1; end <= maxEnd; end++){
+                    postings.computeIfAbsent(text.substring(start, end), g -> new PostingList()).add(ordinal);
+                }
+            }
+        }
+    }
+
+    //Returns candidate ordinals for a query in the order the books were added
+    //Keywords of up to 3 characters are looked up directly (the list is exact), longer ones are a superset to confirm with matches
+    public int[] candidates(SearchQuery query){
+        String search = query.getFolded();
+        if (search == null) return new int[0];
+
+        //every non-empty field contains the empty string, so all books are candidates
+        if (search.isEmpty()) return allOrdinals();
+
+        if (search.length() <= GRAM){
+            PostingList list = postings.get(search);
+            return list == null ? new int[0] : list.toArray();
+        }
+
+        PostingList[] lists = new PostingList[search.length() - GRAM + 1];
+        for (int i = 0; i < lists.length; i++){
+            lists[i] = postings.get(search.substring(i, i + GRAM));
+            if (lists[i] == null) return new int[0];
+        }
+        return PostingList.intersect(lists);
+    }
+
+    //Number of books that have been indexed
+    public int size(){
+        return size;
+    }
+
+    private int[] allOrdinals(){
+        int[] all = new int[size];
+        for (int i = 0; i < size; i++){
+            all[i] = i;
+        }
+        return all;
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongFunction;
+
+/*
+* Multi-version bookkeeping behind LibManager's read transactions
+* Every change to books/members/loans is a commit: it takes the next version and appends its list rows under a short
+* stamp lock, which is also where the O(1) snapshots of the lists are taken, so a version's snapshots hold exactly the rows
+* up to it. The rest of the commit runs without any lock here, commits on different books/members overlap
+* Versions are published in order with one volatile write each: a commit that finishes early waits in endCommit until the
+* versions before it are out, so a reader never sees version V while an earlier one is still being applied
+* Book availability keeps a chain of (version, count) per book and loans carry the version they were returned in,
+* so a reader at version V sees the counts and open loans as they were at V while writers keep committing
+* Old availability versions are cut off when a book is next written, keeping the newest one every open reader still needs
+ */
+
+public class VersionManager {
+
+    //A committed version and the books/members/loans lists as they were at it
+    record Published(long version, List<Book> books, List<Member> members, List<Loan> loans) {}
+
+    //One availability value of a book, valid from its version until the next newer one
+    static final class AvailabilityVersion {
+        final long version;
+        final int available;
+        volatile AvailabilityVersion older;
+
+        AvailabilityVersion(long version, int available, AvailabilityVersion older){
+            this.version = version;
+            this.available = available;
+            this.older = older;
+        }
+    }
+
+    private volatile Published published = new Published(0, List.of(), List.of(), List.of());
+    //writers only hold it to take a version and append their rows, readers never take it
+    private final Object stampLock = new Object();
+    private long nextVersion = 1;
+    //snapshots of the lists at a version, taken under the stamp lock
+    private final LongFunction<Published> snapshots;
+    //commits stamped but not published yet, by version
+    private final Map<Long, Published> stamped = new ConcurrentHashMap<>();
+    //endCommit waits on it for the commits before its own to be published
+    private final Object publishLock = new Object();
+
+    //newest availability version of each book
+    private final Map<Book, AvailabilityVersion> availability = new ConcurrentHashMap<>();
+    //versions held by open read transactions -> how many transactions hold each
+    private final ConcurrentSkipListMap<Long, Integer> readers = new ConcurrentSkipListMap<>();
+
+    //snapshots gives the books/members/loans lists as they are when it is called
+    public VersionManager(LongFunction<Published> snapshots){
+        this.snapshots = snapshots;
+    }
+
+    //Starts a commit that adds no list rows
+    public long beginCommit(){
+        return beginCommit(() -> {});
+    }
+
+    //Starts a commit and returns its version, appends adds the commit's list rows (it must not block)
+    //endCommit must follow in a finally block
+    public long beginCommit(Runnable appends){
+        synchronized (stampLock){
+            long version = nextVersion++;
+            try {
+                appends.run();
+            } finally {
+                //taken even if the appends failed, every version handed out has to be published for the later ones to follow
+                stamped.put(version, snapshots.apply(version));
+            }
+            return version;
+        }
+    }
+
+    //Makes the commit visible to new readers once every earlier version is, with the snapshots taken at beginCommit
+    public void endCommit(long version){
+        Published next = stamped.remove(version);
+        boolean interrupted = false;
+        synchronized (publishLock){
+            //the earlier commits are already running (they got their versions first), so this wait is short
+            while (published.version() != version - 1){
+                try {
+                    publishLock.wait();
+                } catch (InterruptedException e){
+                    interrupted = true;
+                }
+            }
+            published = next;
+            publishLock.notifyAll();
+        }
+        if (interrupted){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //Records a book's availability as of a commit, called between beginCommit and endCommit
+    public void availabilityChanged(Book book, int available, long version){
+        AvailabilityVersion head = new AvailabilityVersion(version, available, availability.get(book));
+        availability.put(book, head);
+        trim(head);
+    }
+
+    //Drops the versions no reader can reach: the newest one at or below the oldest open reader is the last one kept
+    private void trim(AvailabilityVersion head){
+        long horizon = oldestReader();
+        AvailabilityVersion node = head;
+        while (node != null && node.version > horizon){
+            node = node.older;
+        }
+        if (node != null){
+            node.older = null;
+        }
+    }
+
+    //Oldest version any open transaction reads at, or the latest published one when none is open
+    private long oldestReader(){
+        Map.Entry<Long, Integer> oldest = readers.firstEntry();
+        long latest = published.version;
+        return oldest == null ? latest : Math.min(oldest.getKey(), latest);
+    }
+
+    //Pins the latest published version for a new reader
+    //Retries if a commit lands in between: until the reader is registered a trim may already have dropped what it needs
+    Published openRead(){
+        while (true){
+            Published current = published;
+            readers.merge(current.version(), 1, Integer::sum);
+            if (published == current){
+                return current;
+            }
+            closeRead(current.version());
+        }
+    }
+
+    //Releases a version pinned by openRead
+    void closeRead(long version){
+        readers.computeIfPresent(version, (v, count) -> count == 1 ? null : count - 1);
+    }
+
+    //A book's availability at a version, null if the book didn't exist yet
+    Integer availableAt(Book book, long version){
+        AvailabilityVersion node = availability.get(book);
+        while (node != null && node.version > version){
+            node = node.older;
+        }
+        return node == null ? null : node.available;
+    }
+
+    //Latest published version
+    public long currentVersion(){
+        return published.version;
+    }
+
+    //Number of open read transactions
+    public int openReaders(){
+        int count = 0;
+        for (int c : readers.values()) count += c;
+        return count;
+    }
+
+    //Availability versions currently kept for a book, for tests and monitoring
+    int chainLength(Book book){
+        int length = 0;
+        for (AvailabilityVersion node = availability.get(book); node != null; node = node.older) length++;
+        return length;
+    }
+}
@@ -0,0 +1,57 @@
+import org.junit.jupiter.api.Test;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VersionManagerTest {
+
+    private static void commitAvailability(VersionManager versions, Book book, int available) {
+        long version = versions.beginCommit();
+        try {
+            versions.availabilityChanged(book, available, version);
+        } finally {
+            versions.endCommit(version);
+        }
+    }
+
+    //Testing that old availability versions are kept while a reader needs them and trimmed once it closes
+    @Test
+    void oldVersions_areKeptForOpenReaders_andDroppedAfterClose() {
+        Book book = new Book(1, "Dune", "Herbert", 1965, "SciFi", 5);
+        VersionManager versions = new VersionManager(version -> new VersionManager.Published(version, List.of(book), List.of(), List.of()));
+        commitAvailability(versions, book, 5);
+
+        VersionManager.Published reader = versions.openRead();
+        for (int available = 4; available >= 0; available--) {
+            commitAvailability(versions, book, available);
+        }
+        assertEquals(Integer.valueOf(5), versions.availableAt(book, reader.version()));
+        assertEquals(6, versions.chainLength(book));
+
+        versions.closeRead(reader.version());
+        assertEquals(0, versions.openReaders());
+        //the new version plus the one new readers may still open at until it is published
+        commitAvailability(versions, book, 1);
+        assertEquals(2, versions.chainLength(book));
+        assertEquals(Integer.valueOf(1), versions.availableAt(book, versions.currentVersion()));
+        assertNull(versions.availableAt(new Book(2, "Emma", "Austen", 1815, "Classic", 1), versions.currentVersion()));
+    }
+
+    //Testing that a commit finishing before an earlier one is only published once the earlier one is
+    @Test
+    void laterCommit_isPublishedAfterEarlierOne() throws Exception {
+        VersionManager versions = new VersionManager(version -> new VersionManager.Published(version, List.of(), List.of(), List.of()));
+        long first = versions.beginCommit();
+        long second = versions.beginCommit();
+
+        Thread later = new Thread(() -> versions.endCommit(second));
+        later.start();
+        later.join(200);
+        assertTrue(later.isAlive());
+        assertEquals(0, versions.currentVersion());
+
+        versions.endCommit(first);
+        later.join();
+        assertEquals(second, versions.currentVersion());
+    }
+}
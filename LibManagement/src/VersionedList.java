@@ -0,0 +1,80 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/*
+* Append-only list whose readers take an immutable snapshot in O(1) instead of copying it
+* Every add publishes a new version (backing array + size) through one volatile field, a snapshot is just the
+* version it saw: rows before its size are never written again, so it stays the same while writers keep appending
+* The backing array is only copied when it is full (doubling), older snapshots keep pointing at the old array
+* Readers never take a lock, writers are serialized on the list
+ */
+
+public class VersionedList<T> {
+
+    //One published state, items[0, size) is final for this version
+    private record Version(Object[] items, int size, long number) {}
+
+    private volatile Version current = new Version(new Object[16], 0, 0);
+
+    //Appends an item and publishes the next version
+    public synchronized void add(T item){
+        Version version = current;
+        Object[] items = version.items;
+        if (version.size == items.length){
+            items = Arrays.copyOf(items, items.length * 2);
+        }
+        items[version.size] = item;
+        //the volatile write makes the new row visible together with the size that covers it
+        current = new Version(items, version.size + 1, version.number + 1);
+    }
+
+    //Item at an index of the current version
+    @SuppressWarnings("unchecked")
+    public T get(int index){
+        Version version = current;
+        if (index < 0 || index >= version.size){
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + version.size);
+        }
+        return (T) version.items[index];
+    }
+
+    public int size(){
+        return current.size;
+    }
+
+    //Number of adds so far, a snapshot with the same version has the same rows
+    public long version(){
+        return current.number;
+    }
+
+    //Read-only view of the current version, later adds don't show up in it
+    public List<T> snapshot(){
+        return new Snapshot<>(current);
+    }
+
+    private static final class Snapshot<T> extends AbstractList<T> implements RandomAccess {
+        private final Object[] items;
+        private final int size;
+
+        private Snapshot(Version version){
+            this.items = version.items;
+            this.size = version.size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index){
+            if (index < 0 || index >= size){
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+            }
+            return (T) items[index];
+        }
+
+        @Override
+        public int size(){
+            return size;
+        }
+    }
+}
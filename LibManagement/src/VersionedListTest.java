@@ -0,0 +1,36 @@
+import org.junit.jupiter.api.Test;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VersionedListTest {
+
+    //Testing that a snapshot keeps exactly its rows while the list grows past a resize
+    @Test
+    void snapshot_keepsItsRows_whileWritersAppendPastAResize() {
+        VersionedList<Integer> list = new VersionedList<>();
+        for (int i = 0; i < 10; i++) list.add(i);
+
+        List<Integer> before = list.snapshot();
+        for (int i = 10; i < 100; i++) list.add(i);
+
+        assertEquals(10, before.size());
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), before);
+        assertEquals(100, list.snapshot().size());
+        assertEquals(Integer.valueOf(99), list.get(99));
+        assertEquals(100, list.version());
+        assertThrows(IndexOutOfBoundsException.class, () -> before.get(10));
+    }
+
+    //Testing that a snapshot can't be changed
+    @Test
+    void snapshot_isReadOnly() {
+        VersionedList<String> list = new VersionedList<>();
+        list.add("a");
+        List<String> snapshot = list.snapshot();
+
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add("b"));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.set(0, "b"));
+        assertEquals(1, list.size());
+    }
+}